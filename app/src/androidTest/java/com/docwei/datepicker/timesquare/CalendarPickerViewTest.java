@@ -0,0 +1,235 @@
+package com.docwei.datepicker.timesquare;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.os.Parcel;
+import android.view.View;
+import com.docwei.datepicker.timesquare.CalendarPickerView.SelectionMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CalendarPickerViewTest {
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+  /** Background loads handed to the picker, never run, so every month stays loading. */
+  private final List<Runnable> pendingLoads = new ArrayList<>();
+  private CalendarPickerView picker;
+
+  @Test public void preselectsDatesWhileMonthsLoadInTheBackground() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        picker = newLoadingPicker();
+
+        picker.init(date(2017, Calendar.JANUARY, 1), date(2018, Calendar.JANUARY, 1), TIME_ZONE,
+            Locale.CHINA)
+            .inMode(SelectionMode.MULTIPLE)
+            .withSelectedDates(Arrays.asList(date(2017, Calendar.MARCH, 2),
+                date(2017, Calendar.MARCH, 13), date(2017, Calendar.JUNE, 20)));
+
+        assertEquals(Arrays.asList(date(2017, Calendar.MARCH, 2), date(2017, Calendar.JUNE, 20)),
+            picker.getSelectedDates());
+      }
+    });
+  }
+
+  @Test public void selectsDatesWhileMonthsLoadInTheBackground() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        picker = newLoadingPicker();
+        picker.init(date(2017, Calendar.JANUARY, 1), date(2018, Calendar.JANUARY, 1), TIME_ZONE,
+            Locale.CHINA)
+            .inMode(SelectionMode.MULTIPLE);
+
+        int selected = picker.selectDates(Arrays.asList(date(2017, Calendar.APRIL, 12),
+            date(2017, Calendar.APRIL, 13)));
+
+        assertEquals(1, selected);
+        assertEquals(Arrays.asList(date(2017, Calendar.APRIL, 12)), picker.getSelectedDates());
+      }
+    });
+  }
+
+  @Test public void tapBeforeASetSelectionIsAppliedKeepsBoth() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        picker = newLoadingPicker();
+        picker.init(date(2017, Calendar.JANUARY, 1), date(2018, Calendar.JANUARY, 1), TIME_ZONE,
+            Locale.CHINA)
+            .inMode(SelectionMode.MULTIPLE);
+        SelectionSnapshot initial = picker.getSelectionSnapshot();
+
+        // Set here, the change still reaches the views through a message, as from another thread;
+        // the tap comes before that message.
+        assertTrue(picker.compareAndSetSelection(initial,
+            Collections.singletonList(date(2017, Calendar.MAY, 2))));
+        picker.selectDate(date(2017, Calendar.MAY, 4));
+
+        SelectionSnapshot snapshot = picker.getSelectionSnapshot();
+        assertTrue(snapshot.contains(date(2017, Calendar.MAY, 2)));
+        assertTrue(snapshot.contains(date(2017, Calendar.MAY, 4)));
+        assertEquals(snapshot.getDates(), picker.getSelectedDates());
+        assertFalse(picker.compareAndSetSelection(initial,
+            Collections.singletonList(date(2017, Calendar.MAY, 3))));
+      }
+    });
+    InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        // Nothing is left for the message to apply.
+        assertEquals(2, picker.getSelectionSnapshot().size());
+      }
+    });
+  }
+
+  @Test public void setSelectionFollowsTheModeAndFilter() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        picker = newLoadingPicker();
+        picker.init(date(2017, Calendar.JANUARY, 1), date(2018, Calendar.JANUARY, 1), TIME_ZONE,
+            Locale.CHINA)
+            .inMode(SelectionMode.RANGE);
+
+        assertTrue(picker.compareAndSetSelection(picker.getSelectionSnapshot(),
+            Arrays.asList(date(2017, Calendar.MAY, 10), date(2017, Calendar.MAY, 15))));
+
+        assertEquals(6, picker.getSelectionSnapshot().size());
+        assertFalse(picker.compareAndSetSelection(null,
+            Collections.singletonList(date(2017, Calendar.MAY, 3))));
+      }
+    });
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void setSelectionBeforeInitThrows() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        newLoadingPicker().compareAndSetSelection(null,
+            Collections.singletonList(date(2017, Calendar.MAY, 3)));
+      }
+    });
+  }
+
+  @Test public void openEndedOpensAtItsDate() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        picker = new CalendarPickerView(InstrumentationRegistry.getTargetContext(), null);
+        picker.initOpenEnded(date(2017, Calendar.MAY, 15), TIME_ZONE, Locale.CHINA);
+
+        layOut(picker);
+
+        MonthDescriptor month =
+            (MonthDescriptor) picker.getItemAtPosition(picker.getFirstVisiblePosition());
+        assertEquals(2017, month.getYear());
+        assertEquals(Calendar.MAY, month.getMonth());
+      }
+    });
+  }
+
+  @Test public void savedStateSurvivesAParcel() {
+    onMainThread(new Runnable() {
+      @Override public void run() {
+        picker = new CalendarPickerView(InstrumentationRegistry.getTargetContext(), null);
+        picker.init(date(2017, Calendar.JANUARY, 1), date(2018, Calendar.JANUARY, 1), TIME_ZONE,
+            Locale.CHINA)
+            .inMode(SelectionMode.MULTIPLE)
+            .withSelectedDates(Arrays.asList(date(2017, Calendar.MARCH, 2),
+                date(2017, Calendar.MARCH, 3), date(2017, Calendar.JUNE, 20)));
+        layOut(picker);
+        picker.setSelectionFromTop(4, -50);
+        layOut(picker);
+
+        Parcel parcel = Parcel.obtain();
+        picker.onSaveInstanceState().writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        CalendarPickerEngine.SavedState state =
+            CalendarPickerEngine.SavedState.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(EpochDays.of(2017, Calendar.JANUARY, 1), state.minDay);
+        assertEquals(EpochDays.of(2018, Calendar.JANUARY, 1), state.maxDay);
+        assertEquals("MULTIPLE", state.selectionMode);
+        assertArrayEquals(new int[] {
+            EpochDays.of(2017, Calendar.MARCH, 2), EpochDays.of(2017, Calendar.MARCH, 4),
+            EpochDays.of(2017, Calendar.JUNE, 20), EpochDays.of(2017, Calendar.JUNE, 21)
+        }, state.selectedRuns);
+        assertEquals(EpochDays.monthOrdinal(2017, Calendar.MAY), state.firstVisibleMonth);
+        assertEquals(-50, state.firstVisibleTop);
+
+        CalendarPickerView restored =
+            new CalendarPickerView(InstrumentationRegistry.getTargetContext(), null);
+        restored.onRestoreInstanceState(state);
+        layOut(restored);
+
+        assertEquals(picker.getSelectedDates(), restored.getSelectedDates());
+        assertEquals(4, restored.getFirstVisiblePosition());
+        assertEquals(-50, restored.getChildAt(0).getTop());
+      }
+    });
+  }
+
+  /**
+   * Returns a picker whose filter rejects the 13th of every month and whose background loads
+   * never run.
+   */
+  private CalendarPickerView newLoadingPicker() {
+    CalendarPickerView view =
+        new CalendarPickerView(InstrumentationRegistry.getTargetContext(), null);
+    view.setBackgroundExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        pendingLoads.add(command);
+      }
+    });
+    view.setMonthSelectableFilter(new CalendarPickerView.MonthSelectableFilter() {
+      @Override public int getSelectableDays(int year, int month) {
+        return ~(1 << 12);
+      }
+    });
+    return view;
+  }
+
+  private static void layOut(View view) {
+    view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+    view.layout(0, 0, 1080, 1920);
+  }
+
+  private static Date date(int year, int month, int dayOfMonth) {
+    return EpochDays.toDate(EpochDays.of(year, month, dayOfMonth), TIME_ZONE);
+  }
+
+  /** Runs {@code action} on the main thread, where the picker lives, rethrowing what it throws. */
+  private static void onMainThread(final Runnable action) {
+    final Throwable[] thrown = new Throwable[1];
+    InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+      @Override public void run() {
+        try {
+          action.run();
+        } catch (Throwable t) {
+          thrown[0] = t;
+        }
+      }
+    });
+    if (thrown[0] instanceof Error) {
+      throw (Error) thrown[0];
+    }
+    if (thrown[0] != null) {
+      throw (RuntimeException) thrown[0];
+    }
+  }
+}
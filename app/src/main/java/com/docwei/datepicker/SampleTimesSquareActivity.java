@@ -111,11 +111,11 @@ public class SampleTimesSquareActivity extends AppCompatActivity {
                 e.printStackTrace();
                 Toast.makeText(SampleTimesSquareActivity.this, "日期不选择", Toast.LENGTH_SHORT).show();
                 mPickerview.init(lastYear.getTime(), nextYear.getTime()) //
-                        .inMode(CalendarPickerView.SelectionMode.MULTIPLE) //
+                        .inMode(CalendarPickerView.SelectionMode.RANGE) //
                         .withSelectedDates(null);
             }
             mPickerview.init(lastYear.getTime(), nextYear.getTime()) //
-                    .inMode(CalendarPickerView.SelectionMode.MULTIPLE) //
+                    .inMode(CalendarPickerView.SelectionMode.RANGE) //
                     .withSelectedDates(list);
         }
 
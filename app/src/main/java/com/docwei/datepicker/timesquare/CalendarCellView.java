@@ -1,6 +1,7 @@
 package com.docwei.datepicker.timesquare;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.widget.FrameLayout;
 import android.widget.TextView;
@@ -45,6 +46,10 @@ public class CalendarCellView extends FrameLayout {
   private TextView dayOfMonthTextView;
   private boolean isStart;
   private boolean isEnd;
+  /** Heatmap color of the day, or 0; drawn in place of the plain day background. */
+  private int heatColor;
+  /** The month decorators whose decorations this view shows, so removed ones can undo theirs. */
+  private CalendarMonthDecorator[] monthDecorators;
 
 
   @SuppressWarnings("UnusedDeclaration") //
@@ -97,6 +102,35 @@ public class CalendarCellView extends FrameLayout {
     }
   }
 
+  public void setHeatColor(int heatColor) {
+    if (this.heatColor != heatColor) {
+      this.heatColor = heatColor;
+      invalidate();
+    }
+  }
+
+  public int getHeatColor() {
+    return heatColor;
+  }
+
+  CalendarMonthDecorator[] getMonthDecorators() {
+    return monthDecorators;
+  }
+
+  void setMonthDecorators(CalendarMonthDecorator[] monthDecorators) {
+    this.monthDecorators = monthDecorators;
+  }
+
+  @Override protected void dispatchDraw(Canvas canvas) {
+    // Selected, pressed, today and highlighted days keep their own background.
+    if (heatColor != 0 && isCurrentMonth && !isSelected() && !isPressed() && !isToday
+        && !isHighlighted && !isStart && !isEnd
+        && rangeState == MonthCellDescriptor.RangeState.NONE) {
+      canvas.drawColor(heatColor);
+    }
+    super.dispatchDraw(canvas);
+  }
+
   public void setHighlighted(boolean isHighlighted) {
     if (this.isHighlighted != isHighlighted) {
       this.isHighlighted = isHighlighted;
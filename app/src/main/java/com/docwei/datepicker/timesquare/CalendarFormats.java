@@ -0,0 +1,157 @@
+package com.docwei.datepicker.timesquare;
+
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Strings shown by the picker for one locale, time zone and set of formats: day numbers, weekday
+ * headers, month titles and the today/start/end labels.  Instances are shared process-wide through
+ * {@link #get}, and everything but the month titles is formatted once up front, so binding a month
+ * only looks strings up.
+ */
+final class CalendarFormats {
+  static final String TODAY = "今天";
+  static final String START = "开始";
+  static final String END = "结束";
+
+  /** Month titles kept per instance; a title is cheap to format again if it falls out. */
+  private static final int MONTH_LABEL_CACHE_SIZE = 120;
+
+  private static final Map<String, CalendarFormats> INSTANCES = new HashMap<>();
+
+  private final Locale locale;
+  private final TimeZone timeZone;
+  private final boolean isRtl;
+  /** Indexed by day of month, 1..31. */
+  private final String[] dayNumbers = new String[32];
+  private final String[] startLabels = new String[32];
+  private final String[] endLabels = new String[32];
+  /** Indexed by {@link Calendar#SUNDAY}..{@link Calendar#SATURDAY}. */
+  private final String[] weekdayNames = new String[8];
+  private final DateFormat monthNameFormat;
+  /** Least recently used month titles, keyed by month ordinal.  Guarded by itself. */
+  private final Map<Integer, String> monthLabels =
+      new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+          return size() > MONTH_LABEL_CACHE_SIZE;
+        }
+      };
+
+  private CalendarFormats(Locale locale, TimeZone timeZone, String monthNamePattern,
+      String dayNamePattern, String[] shortWeekdays) {
+    this.locale = locale;
+    this.timeZone = timeZone;
+    isRtl = isRtl(locale);
+
+    NumberFormat numberFormat = NumberFormat.getInstance(locale);
+    for (int day = 1; day <= 31; day++) {
+      dayNumbers[day] = numberFormat.format(day);
+      startLabels[day] = dayNumbers[day] + "\n" + START;
+      endLabels[day] = dayNumbers[day] + "\n" + END;
+    }
+
+    DateFormatSymbols symbols = new DateFormatSymbols(locale);
+    if (shortWeekdays != null) {
+      symbols.setShortWeekdays(shortWeekdays);
+    }
+    DateFormat weekdayFormat = new SimpleDateFormat(dayNamePattern, symbols);
+    weekdayFormat.setTimeZone(timeZone);
+    // 1970-01-04 was a Sunday.
+    int sunday = EpochDays.of(1970, Calendar.JANUARY, 4);
+    for (int dayOfWeek = Calendar.SUNDAY; dayOfWeek <= Calendar.SATURDAY; dayOfWeek++) {
+      weekdayNames[dayOfWeek] = weekdayFormat.format(
+          EpochDays.toDate(sunday + dayOfWeek - Calendar.SUNDAY, timeZone));
+    }
+
+    monthNameFormat = new SimpleDateFormat(monthNamePattern, locale);
+    monthNameFormat.setTimeZone(timeZone);
+    useProlepticGregorian(monthNameFormat);
+  }
+
+  /**
+   * Makes {@code format} use the Gregorian calendar for dates before October 1582 as well, as
+   * {@link EpochDays} does; by default it switches to the Julian calendar there, which would put
+   * the titles of earlier months days or weeks off.
+   */
+  static void useProlepticGregorian(DateFormat format) {
+    Calendar calendar = format.getCalendar();
+    if (calendar instanceof GregorianCalendar) {
+      ((GregorianCalendar) calendar).setGregorianChange(new Date(Long.MIN_VALUE));
+    }
+  }
+
+  /**
+   * Returns the shared instance for the given locale, time zone, format patterns and short weekday
+   * names ({@code null} for the locale's own).
+   */
+  static CalendarFormats get(Locale locale, TimeZone timeZone, String monthNamePattern,
+      String dayNamePattern, String[] shortWeekdays) {
+    String key = locale + "|" + timeZone.getID() + "|" + monthNamePattern + "|" + dayNamePattern
+        + "|" + Arrays.toString(shortWeekdays);
+    synchronized (INSTANCES) {
+      CalendarFormats formats = INSTANCES.get(key);
+      if (formats == null) {
+        formats = new CalendarFormats(locale, timeZone, monthNamePattern, dayNamePattern,
+            shortWeekdays);
+        INSTANCES.put(key, formats);
+      }
+      return formats;
+    }
+  }
+
+  Locale getLocale() {
+    return locale;
+  }
+
+  boolean isRtl() {
+    return isRtl;
+  }
+
+  String dayNumber(int dayOfMonth) {
+    return dayNumbers[dayOfMonth];
+  }
+
+  String startLabel(int dayOfMonth) {
+    return startLabels[dayOfMonth];
+  }
+
+  String endLabel(int dayOfMonth) {
+    return endLabels[dayOfMonth];
+  }
+
+  /** Returns the header for a day of the week, from {@link Calendar#SUNDAY}. */
+  String weekdayName(int dayOfWeek) {
+    return weekdayNames[dayOfWeek];
+  }
+
+  /** Returns the title of a month.  Safe to call from any thread. */
+  String monthLabel(int monthOrdinal) {
+    synchronized (monthLabels) {
+      String label = monthLabels.get(monthOrdinal);
+      if (label == null) {
+        long millis = EpochDays.toMillis(EpochDays.firstDayOfMonth(monthOrdinal), timeZone);
+        label = monthNameFormat.format(millis);
+        monthLabels.put(monthOrdinal, label);
+      }
+      return label;
+    }
+  }
+
+  private static boolean isRtl(Locale locale) {
+    // TODO convert the build to gradle and use getLayoutDirection instead of this (on 17+)?
+    final int directionality = Character.getDirectionality(locale.getDisplayName(locale).charAt(0));
+    return directionality == Character.DIRECTIONALITY_RIGHT_TO_LEFT
+        || directionality == Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC;
+  }
+}
@@ -24,8 +24,18 @@ public class CalendarGridView extends ViewGroup {
 
   private final Paint dividerPaint = new Paint();
   private final Paint dividerPaint2 = new Paint();
+  /**
+   * End points of the cell borders, {@code x0, y0, x1, y1} per line: the left border and the right
+   * border of each column.  Rebuilt on every layout, drawn with a single call.
+   */
+  private final float[] columnLines = new float[8 * 4];
+  /** End points of the bottom border of each visible row, header included. */
+  private final float[] rowLines = new float[7 * 4];
+  private int rowLineCount;
   private int oldWidthMeasureSize;
   private int oldNumRows;
+  /** Measurements shared with the other months of the picker; null outside of a picker. */
+  private MonthMeasureCache measureCache;
 
   public CalendarGridView(Context context, AttributeSet attrs) {
     super(context, attrs);
@@ -57,6 +67,10 @@ public class CalendarGridView extends ViewGroup {
     }
   }
 
+  void setMeasureCache(MonthMeasureCache measureCache) {
+    this.measureCache = measureCache;
+  }
+
   public void setDisplayHeader(boolean displayHeader) {
     getChildAt(0).setVisibility(displayHeader ? VISIBLE : GONE);
   }
@@ -77,41 +91,53 @@ public class CalendarGridView extends ViewGroup {
     }
     super.addView(child, index, params);
   }
-  //绘制竖线
+  //绘制竖线和横线
   @Override protected void dispatchDraw(Canvas canvas) {
     super.dispatchDraw(canvas);
+    canvas.drawLines(columnLines, dividerPaint);
+    canvas.drawLines(rowLines, 0, rowLineCount * 4, dividerPaint2);
+  }
+
+  /** Works out where the dividers go.  They only move when the grid is laid out again. */
+  private void computeDividers() {
     final ViewGroup row = (ViewGroup) getChildAt(1);
-    int top = row.getTop();
-    int bottom = getBottom();
+    final float top = row.getTop();
+    final float bottom = getHeight();
     // Left side border.
-    final int left = row.getChildAt(0).getLeft() + getLeft();
-    canvas.drawLine(left + FLOAT_FUDGE, top, left + FLOAT_FUDGE, bottom, dividerPaint);
-
+    final int left = row.getLeft() + row.getChildAt(0).getLeft();
+    setLine(columnLines, 0, left + FLOAT_FUDGE, top, left + FLOAT_FUDGE, bottom);
     // Each cell's right-side border.
     for (int c = 0; c < 7; c++) {
-      float x = left + row.getChildAt(c).getRight() - FLOAT_FUDGE;
-      canvas.drawLine(x, top, x, bottom, dividerPaint);
+      float x = row.getLeft() + row.getChildAt(c).getRight() - FLOAT_FUDGE;
+      setLine(columnLines, c + 1, x, top, x, bottom);
+    }
+
+    // A bottom border under each row.
+    rowLineCount = 0;
+    for (int c = 0, numChildren = getChildCount(); c < numChildren; c++) {
+      final View child = getChildAt(c);
+      if (child.getVisibility() == View.VISIBLE) {
+        final int y = child.getBottom() - 1;
+        setLine(rowLines, rowLineCount++, child.getLeft(), y, child.getRight() - 2, y);
+      }
     }
   }
-   //绘制横线
-  @Override protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
-    final boolean retVal = super.drawChild(canvas, child, drawingTime);
-    // Draw a bottom border.
-    final int bottom = child.getBottom() - 1;
-    canvas.drawLine(child.getLeft(), bottom, child.getRight() - 2, bottom, dividerPaint2);
-    return retVal;
+
+  private static void setLine(float[] lines, int line, float x0, float y0, float x1, float y1) {
+    lines[line * 4] = x0;
+    lines[line * 4 + 1] = y0;
+    lines[line * 4 + 2] = x1;
+    lines[line * 4 + 3] = y1;
   }
 
   @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-    Logr.d("Grid.onMeasure w=%s h=%s", MeasureSpec.toString(widthMeasureSpec),
-        MeasureSpec.toString(heightMeasureSpec));
     int widthMeasureSize = MeasureSpec.getSize(widthMeasureSpec);
     if (oldWidthMeasureSize == widthMeasureSize) {
       Logr.d("SKIP Grid.onMeasure");
       setMeasuredDimension(getMeasuredWidth(), getMeasuredHeight());
       return;
     }
-    long start = System.currentTimeMillis();
+    long start = Tracer.begin(Tracer.SECTION_GRID_MEASURE);
     oldWidthMeasureSize = widthMeasureSize;
     int cellSize = widthMeasureSize / 7;
     // Remove any extra pixels since /7 is unlikely to give whole nums.
@@ -119,24 +145,48 @@ public class CalendarGridView extends ViewGroup {
     int totalHeight = 0;
     final int rowWidthSpec = makeMeasureSpec(widthMeasureSize, EXACTLY);
     final int rowHeightSpec = makeMeasureSpec(cellSize, EXACTLY);
+    final int measuredWidth = widthMeasureSize + 2; // Fudge factor to make the borders show up.
+    final boolean displayHeader = getChildAt(0).getVisibility() == View.VISIBLE;
+    final float fontScale = getResources().getConfiguration().fontScale;
+    final int cached = measureCache == null ? -1
+        : measureCache.find(widthMeasureSize, oldNumRows, displayHeader, fontScale);
+    if (cached >= 0) {
+      // Another month of this shape has been measured: every row gets an exact size, so the rows
+      // don't look for their tallest cell and unchanged cells skip their measure pass.
+      final int headerHeightSpec = makeMeasureSpec(measureCache.headerHeight(cached), EXACTLY);
+      for (int c = 0, numChildren = getChildCount(); c < numChildren; c++) {
+        final View child = getChildAt(c);
+        if (child.getVisibility() == View.VISIBLE) {
+          measureChild(child, rowWidthSpec, c == 0 ? headerHeightSpec : rowHeightSpec);
+        }
+      }
+      setMeasuredDimension(measuredWidth, measureCache.totalHeight(cached));
+      Tracer.end(Tracer.SECTION_GRID_MEASURE, start);
+      return;
+    }
+    int headerHeight = 0;
     for (int c = 0, numChildren = getChildCount(); c < numChildren; c++) {
       final View child = getChildAt(c);
       if (child.getVisibility() == View.VISIBLE) {
         if (c == 0) { // It's the header: height should be wrap_content.
           measureChild(child, rowWidthSpec, makeMeasureSpec(cellSize, AT_MOST));
+          headerHeight = child.getMeasuredHeight();
         } else {
           measureChild(child, rowWidthSpec, rowHeightSpec);
         }
         totalHeight += child.getMeasuredHeight();
       }
     }
-    final int measuredWidth = widthMeasureSize + 2; // Fudge factor to make the borders show up.
+    if (measureCache != null) {
+      measureCache.put(widthMeasureSize, oldNumRows, displayHeader, fontScale, headerHeight,
+          totalHeight);
+    }
     setMeasuredDimension(measuredWidth, totalHeight);
-    Logr.d("Grid.onMeasure %d ms", System.currentTimeMillis() - start);
+    Tracer.end(Tracer.SECTION_GRID_MEASURE, start);
   }
 
   @Override protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-    long start = System.currentTimeMillis();
+    long start = Tracer.begin(Tracer.SECTION_GRID_LAYOUT);
     top = 0;
     for (int c = 0, numChildren = getChildCount(); c < numChildren; c++) {
       final View child = getChildAt(c);
@@ -144,7 +194,8 @@ public class CalendarGridView extends ViewGroup {
       child.layout(left, top, right, top + rowHeight);
       top += rowHeight;
     }
-    Logr.d("Grid.onLayout %d ms", System.currentTimeMillis() - start);
+    computeDividers();
+    Tracer.end(Tracer.SECTION_GRID_LAYOUT, start);
   }
 
   public void setNumRows(int numRows) {
@@ -0,0 +1,51 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Date;
+
+/**
+ * A decorator that works out a whole month at a time.  Unlike {@link CalendarCellDecorator}, which
+ * is called for every cell on every bind, the picker calls {@link #decorateMonth(Date, int[])}
+ * once per month, keeps the results, and only asks again for the dates the decorator invalidates.
+ * A decorator backed by a database can so load a month with a single query.
+ * <p>
+ * Decorations are ints chosen by the decorator (e.g. a badge count or a resource id); 0 means the
+ * day is not decorated.
+ */
+public interface CalendarMonthDecorator {
+  /**
+   * Returns the first day this decorator may decorate, or null if there is no lower bound.  Months
+   * wholly outside of {@link #getStartDate()} .. {@link #getEndDate()} are never passed to
+   * {@link #decorateMonth(Date, int[])}.  The range is read again after each invalidation.
+   */
+  Date getStartDate();
+
+  /** Returns the last day this decorator may decorate (inclusive), or null if there is no bound. */
+  Date getEndDate();
+
+  /**
+   * Works out the decorations of one month grid: {@code out[i]} is the decoration of the day
+   * {@code i} days after {@code firstDay}, the top-left cell.  {@code out} comes filled with 0 and
+   * has one entry per cell.
+   */
+  void decorateMonth(Date firstDay, int[] out);
+
+  /**
+   * Shows {@code decoration} on a cell.  It is called with 0 as well, since cell views are reused
+   * for other days: then it should undo whatever it did to the cell.
+   */
+  void apply(CalendarCellView cellView, int decoration);
+
+  /**
+   * Called with a listener when the decorator is given to a picker, and with null when it's
+   * removed.  Tell the listener when decorations change; nothing is redecorated otherwise.
+   */
+  void setInvalidationListener(InvalidationListener listener);
+
+  interface InvalidationListener {
+    /** The decorations from {@code from} to {@code to}, both inclusive, may have changed. */
+    void onDecorationsChanged(Date from, Date to);
+
+    /** Any decoration, or the decorator's range, may have changed. */
+    void onAllDecorationsChanged();
+  }
+}
@@ -0,0 +1,1830 @@
+package com.docwei.datepicker.timesquare;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Toast;
+
+import com.docwei.datepicker.R;
+import com.docwei.datepicker.timesquare.CalendarPickerView.CellClickInterceptor;
+import com.docwei.datepicker.timesquare.CalendarPickerView.DateSelectableFilter;
+import com.docwei.datepicker.timesquare.CalendarPickerView.MonthSelectableFilter;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnDateSelectedListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnInvalidDateSelectedListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnSelectionChangedListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnSingleAndMutipleChoiceListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.SelectionMode;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Everything a calendar picker knows apart from how its months are laid out on screen: the months
+ * shown, their cached grids, the selection, the selectable filter and its background load.  It
+ * talks to the list showing the months through a {@link Host}, which lets
+ * {@link CalendarPickerView} (a ListView) and {@link CalendarRecyclerView} (a RecyclerView) share
+ * it.
+ */
+final class CalendarPickerEngine {
+  /** The list showing an engine's months, by position. */
+  interface Host {
+    Context getContext();
+
+    boolean post(Runnable action);
+
+    /** Runs {@code action} before the next frame is drawn. */
+    void postOnAnimation(Runnable action);
+
+    /** Any month may have changed, and so may the number of months. */
+    void onMonthsChanged();
+
+    /** {@code count} months were inserted at {@code position}. */
+    void onMonthsInserted(int position, int count);
+
+    /** {@code count} months were removed from {@code position}. */
+    void onMonthsRemoved(int position, int count);
+
+    /**
+     * Cells of the cached month models changed; the months bound to them should rebind the cells
+     * that are dirty.
+     */
+    void onCellsChanged();
+
+    /** Returns the position of the first month on screen, or -1 if none is. */
+    int getFirstVisibleMonth();
+
+    /** Returns the position of the last month on screen, or -1 if none is. */
+    int getLastVisibleMonth();
+
+    /** Returns the distance from the top of the list to the top of the first month on screen. */
+    int getFirstVisibleTop();
+
+    /** Jumps to the month at {@code position}, with its top {@code top} pixels into the list. */
+    void showMonth(int position, int top);
+
+    void smoothScrollToMonth(int position);
+  }
+
+  /**
+   * Number of month grids kept in memory.  Grids are built on demand as the list binds them, so
+   * this bounds both init cost and resident memory no matter how long the date range is.
+   */
+  private static final int MONTH_CACHE_SIZE = 8;
+  /** Selectable-days mask with every day of the month set. */
+  private static final int ALL_DAYS = 0x7fffffff;
+  /** Number of months an open-ended calendar keeps in {@link #months}. */
+  static final int WINDOW_MONTHS = 36;
+  /** Number of months an open-ended calendar adds at a time when it reaches an end. */
+  private static final int WINDOW_STEP = 12;
+  /** How close to an end of the window the list may get before the window moves. */
+  private static final int WINDOW_EDGE = 3;
+
+  private final Host host;
+  private final MonthModelCache monthModels = new MonthModelCache(MONTH_CACHE_SIZE);
+  /** Results of {@link #selectableFilter}, keyed by month ordinal. */
+  private final SparseIntArray selectableMasks = new SparseIntArray();
+  final MonthView.Listener listener = new CellClickedListener();
+  /** Grid sizes shared by the months, so most of them don't measure their rows. */
+  private final MonthMeasureCache measureCache = new MonthMeasureCache();
+  final List<MonthDescriptor> months = new ArrayList<>();
+  /** Selected dates as epoch days; the cached month models mirror it in their flags. */
+  final EpochDaySet selectedDays = new EpochDaySet();
+  /** The selection as other threads see it; replaced, never changed, on every change. */
+  private final AtomicReference<SelectionSnapshot> selectionSnapshot = new AtomicReference<>();
+  /**
+   * The snapshot this thread last published or took in.  When {@link #selectionSnapshot} is
+   * another one, a {@link #compareAndSetSelection} hasn't been applied to the views yet.
+   */
+  private SelectionSnapshot appliedSnapshot;
+  private final Runnable pullSelection = new Runnable() {
+    @Override public void run() {
+      pullSelection();
+    }
+  };
+  /** The selection as {@link #selectionListener} last saw it. */
+  private final EpochDaySet deliveredDays = new EpochDaySet();
+  private OnSelectionChangedListener selectionListener;
+  /** True to send selection deltas once per frame rather than once per change. */
+  private boolean selectionNextFrame;
+  private boolean selectionDispatchPending;
+  private final Runnable dispatchSelection = new Runnable() {
+    @Override public void run() {
+      selectionDispatchPending = false;
+      dispatchSelectionDelta();
+    }
+  };
+  private Locale locale;
+  private TimeZone timeZone;
+  private String monthNamePattern;
+  private String dayNamePattern;
+  private CalendarFormats formats;
+  private DateFormat fullDateFormat;
+  /** First selectable day, as an epoch day (see {@link EpochDays}). */
+  private int minDay;
+  /** Day after the last selectable day, as an epoch day: maxDate is exclusive. */
+  private int maxDay;
+  /** Month ordinal of {@code months.get(0)}; month positions are offsets from it. */
+  private int firstMonth;
+  /** True if {@link #months} is a window that moves as the user scrolls. */
+  private boolean openEnded;
+  private boolean windowShiftPending;
+  private int todayDay;
+  private int firstDayOfWeek;
+  private boolean displayOnly;
+  SelectionMode selectionMode;
+  private int dividerColor;
+  private int dayBackgroundResId;
+  private int dayTextColorResId;
+  private int titleTextColor;
+  private boolean displayHeader;
+  private int headerTextColor;
+  private Typeface titleTypeface;
+  private Typeface dateTypeface;
+  private OnDateSelectedListener dateListener;
+  private OnSingleAndMutipleChoiceListener choiceListener;
+  private MonthSelectableFilter selectableFilter;
+  private Executor backgroundExecutor;
+  /** Receives background results; View.post may drop runnables posted off the main thread. */
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  /** Incremented by every init so a background load can tell that it has been superseded. */
+  private volatile int loadGeneration;
+  /** True while a background load is filling in {@link #selectableMasks}. */
+  private boolean loading;
+  private OnInvalidDateSelectedListener invalidDateListener =
+          new DefaultOnInvalidDateSelectedListener();
+  private CellClickInterceptor cellClickInterceptor;
+  private List<CalendarCellDecorator> decorators;
+  private Heatmap heatmap;
+  private CalendarMonthDecorator[] monthDecorators = new CalendarMonthDecorator[0];
+  /** First and last epoch day of each month decorator's range. */
+  private int[] decoratedRanges = new int[0];
+  private DayViewAdapter dayViewAdapter = new DefaultDayViewAdapter();
+  /** True to draw each month with a single {@link MonthCanvasView}. */
+  private boolean canvasMonths;
+  /** True to keep the grid of each month in a hardware layer. */
+  private boolean monthLayers;
+
+  CalendarPickerEngine(Host host) {
+    this.host = host;
+    Context context = host.getContext();
+    timeZone = TimeZone.getDefault();
+    locale = Locale.getDefault();
+    monthNamePattern = context.getString(R.string.month_name_format);
+    dayNamePattern = context.getString(R.string.day_name_format);
+    formats = CalendarFormats.get(locale, timeZone, monthNamePattern, dayNamePattern, null);
+    fullDateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+    fullDateFormat.setTimeZone(timeZone);
+    CalendarFormats.useProlepticGregorian(fullDateFormat);
+  }
+
+  /** Reads the picker's style attributes and returns its background color. */
+  int loadStyle(Context context, AttributeSet attrs) {
+    Resources res = context.getResources();
+    TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CalendarPickerView);
+    final int bg = a.getColor(R.styleable.CalendarPickerView_android_background,
+            res.getColor(R.color.calendar_bg));
+    dividerColor = a.getColor(R.styleable.CalendarPickerView_tsquare_dividerColor,
+            res.getColor(R.color.calendar_divider));
+    dayBackgroundResId = a.getResourceId(R.styleable.CalendarPickerView_tsquare_dayBackground,
+            R.drawable.calendar_bg_selector);
+    dayTextColorResId = a.getResourceId(R.styleable.CalendarPickerView_tsquare_dayTextColor,
+            R.color.calendar_text_selector);
+    titleTextColor = a.getColor(R.styleable.CalendarPickerView_tsquare_titleTextColor,Color.WHITE);
+    displayHeader = a.getBoolean(R.styleable.CalendarPickerView_tsquare_displayHeader, false);
+    headerTextColor = a.getColor(R.styleable.CalendarPickerView_tsquare_headerTextColor,
+            res.getColor(R.color.calendar_text_active));
+    a.recycle();
+    return bg;
+  }
+
+  TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  Locale getLocale() {
+    return locale;
+  }
+
+  void setDecorators(List<CalendarCellDecorator> decorators) {
+    this.decorators = decorators;
+    host.onMonthsChanged();
+  }
+
+  List<CalendarCellDecorator> getDecorators() {
+    return decorators;
+  }
+
+  /** See {@link CalendarPickerView#setMonthDecorators(List)}. */
+  void setMonthDecorators(List<CalendarMonthDecorator> decorators) {
+    for (CalendarMonthDecorator decorator : monthDecorators) {
+      decorator.setInvalidationListener(null);
+    }
+    int count = decorators == null ? 0 : decorators.size();
+    monthDecorators = new CalendarMonthDecorator[count];
+    decoratedRanges = new int[count * 2];
+    for (int d = 0; d < count; d++) {
+      monthDecorators[d] = decorators.get(d);
+      monthDecorators[d].setInvalidationListener(new DecorationListener(monthDecorators[d]));
+    }
+    readDecoratedRanges();
+    for (int i = 0; i < monthModels.size(); i++) {
+      MonthModel model = monthModels.valueAt(i);
+      decorate(model);
+    }
+    host.onMonthsChanged();
+  }
+
+  List<CalendarMonthDecorator> getMonthDecorators() {
+    return Collections.unmodifiableList(Arrays.asList(monthDecorators));
+  }
+
+  /** See {@link CalendarPickerView#setHeatmap(Date, float[], int[])}. */
+  void setHeatmap(Date firstDay, float[] values, int[] palette) {
+    heatmap = values == null ? null
+            : new Heatmap(EpochDays.fromDate(firstDay, timeZone), values, palette);
+    for (int i = 0; i < monthModels.size(); i++) {
+      MonthModel model = monthModels.valueAt(i);
+      model.setHeatmap(heatmap);
+    }
+    host.onCellsChanged();
+  }
+
+  /** Reads the range of each month decorator into {@link #decoratedRanges}, as epoch days. */
+  private void readDecoratedRanges() {
+    for (int d = 0; d < monthDecorators.length; d++) {
+      readDecoratedRange(d);
+    }
+  }
+
+  private void readDecoratedRange(int d) {
+    Date start = monthDecorators[d].getStartDate();
+    Date end = monthDecorators[d].getEndDate();
+    decoratedRanges[d * 2] = start == null ? Integer.MIN_VALUE
+            : EpochDays.fromDate(start, timeZone);
+    decoratedRanges[d * 2 + 1] = end == null ? Integer.MAX_VALUE
+            : EpochDays.fromDate(end, timeZone);
+  }
+
+  /**
+   * Runs the month decorators whose range overlaps {@code model} and stores their results in it.
+   * Cells whose decorations changed are left dirty for a partial rebind.
+   */
+  private void decorate(MonthModel model) {
+    long start = Tracer.begin(Tracer.SECTION_DECORATE);
+    final int cellCount = model.getCellCount();
+    int[] decorations = new int[monthDecorators.length * cellCount];
+    for (int d = 0; d < monthDecorators.length; d++) {
+      int[] out = decorationsOf(d, model);
+      if (out != null) {
+        System.arraycopy(out, 0, decorations, d * cellCount, cellCount);
+      }
+    }
+    model.setDecorations(monthDecorators, decorations);
+    Tracer.end(Tracer.SECTION_DECORATE, start);
+  }
+
+  /**
+   * Returns the decorations month decorator {@code d} gives the cells of {@code model}, or null if
+   * its range doesn't overlap the month's grid.
+   */
+  private int[] decorationsOf(int d, MonthModel model) {
+    final int firstDay = model.getFirstDay();
+    if (decoratedRanges[d * 2] > firstDay + model.getCellCount() - 1
+            || decoratedRanges[d * 2 + 1] < firstDay) {
+      return null;
+    }
+    int[] out = new int[model.getCellCount()];
+    monthDecorators[d].decorateMonth(model.getDate(0), out);
+    return out;
+  }
+
+  /**
+   * Asks {@code decorator} again about the cached months showing any day from {@code from} to
+   * {@code to}; the other month decorators' results are kept.
+   */
+  private void redecorate(CalendarMonthDecorator decorator, int from, int to) {
+    int d = Arrays.asList(monthDecorators).indexOf(decorator);
+    if (d < 0) {
+      return;
+    }
+    readDecoratedRange(d);
+    boolean changed = false;
+    for (int i = 0; i < monthModels.size(); i++) {
+      MonthModel model = monthModels.valueAt(i);
+      int firstDay = model.getFirstDay();
+      // Months not decorated by the current decorators yet are decorated in full when bound.
+      if (model.getDecorators() == monthDecorators
+              && firstDay <= to && firstDay + model.getCellCount() > from) {
+        long start = Tracer.begin(Tracer.SECTION_DECORATE);
+        int[] out = decorationsOf(d, model);
+        model.setDecorations(d, out != null ? out : new int[model.getCellCount()]);
+        Tracer.end(Tracer.SECTION_DECORATE, start);
+        changed |= model.hasDirtyCells();
+      }
+    }
+    if (changed) {
+      host.onCellsChanged();
+    }
+  }
+
+  /** Listens to one month decorator, so that only its own decorations are asked for again. */
+  private class DecorationListener implements CalendarMonthDecorator.InvalidationListener {
+    private final CalendarMonthDecorator decorator;
+
+    DecorationListener(CalendarMonthDecorator decorator) {
+      this.decorator = decorator;
+    }
+
+    @Override public void onDecorationsChanged(Date from, Date to) {
+      redecorate(decorator, EpochDays.fromDate(from, timeZone), EpochDays.fromDate(to, timeZone));
+    }
+
+    @Override public void onAllDecorationsChanged() {
+      redecorate(decorator, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+  }
+
+  DayViewAdapter getDayViewAdapter() {
+    return dayViewAdapter;
+  }
+
+  void init(Date minDate, Date maxDate, TimeZone timeZone, Locale locale) {
+    if (minDate == null || maxDate == null) {
+      throw new IllegalArgumentException(
+              "minDate and maxDate must be non-null.  " + dbg(minDate, maxDate));
+    }
+    if (minDate.after(maxDate)) {
+      throw new IllegalArgumentException(
+              "minDate must be before maxDate.  " + dbg(minDate, maxDate));
+    }
+    if (locale == null) {
+      throw new IllegalArgumentException("Locale is null.");
+    }
+    if (timeZone == null) {
+      throw new IllegalArgumentException("Time zone is null.");
+    }
+
+    setUp(timeZone, locale);
+    minDay = EpochDays.fromDate(minDate, timeZone);
+    maxDay = EpochDays.fromDate(maxDate, timeZone);
+    // Published again for compareAndSetSelection to check dates against the new range.
+    publishSelection();
+    openEnded = false;
+
+    // maxDate is exclusive: stop at the month of the previous day so if maxDate is the first of a
+    // month, we don't accidentally include that month in the view.
+    fillMonths(EpochDays.monthOrdinalOf(minDay), EpochDays.monthOrdinalOf(maxDay - 1));
+
+    startLoading();
+    host.onMonthsChanged();
+  }
+
+  /** See {@link CalendarPickerView#initOpenEnded(Date, TimeZone, Locale)}. */
+  void initOpenEnded(Date date, TimeZone timeZone, Locale locale) {
+    if (date == null) {
+      throw new IllegalArgumentException("date must be non-null.");
+    }
+    if (locale == null) {
+      throw new IllegalArgumentException("Locale is null.");
+    }
+    if (timeZone == null) {
+      throw new IllegalArgumentException("Time zone is null.");
+    }
+
+    setUp(timeZone, locale);
+    minDay = EpochDays.of(1, Calendar.JANUARY, 1);
+    maxDay = EpochDays.of(10000, Calendar.JANUARY, 1);
+    openEnded = true;
+    publishSelection();
+    int day = EpochDays.fromDate(date, timeZone);
+    centerWindowOn(day);
+
+    startLoading();
+    host.onMonthsChanged();
+    // Shown at once rather than posted, so the first layout starts at the date: one starting at
+    // position 0 would bind a month at the window's edge and shift the window for nothing.  An
+    // initializer's selected dates scroll again afterwards.
+    host.showMonth(monthIndexOf(day), 0);
+  }
+
+  /** Resets the state shared by the init methods. */
+  private void setUp(TimeZone timeZone, Locale locale) {
+    // Make sure that all calendar instances use the same time zone and locale.
+    this.timeZone = timeZone;
+    this.locale = locale;
+    readDecoratedRanges();
+    // Changes other threads made to the old selection go with it.
+    appliedSnapshot = selectionSnapshot.get();
+    Calendar today = Calendar.getInstance(timeZone, locale);
+    todayDay = EpochDays.fromMillis(today.getTimeInMillis(), timeZone);
+    firstDayOfWeek = today.getFirstDayOfWeek();
+    formats = CalendarFormats.get(locale, timeZone, monthNamePattern, dayNamePattern, null);
+    fullDateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+    fullDateFormat.setTimeZone(timeZone);
+    CalendarFormats.useProlepticGregorian(fullDateFormat);
+
+    this.selectionMode = SelectionMode.SINGLE;
+    // Clear out any previously-selected dates/cells.
+    selectedDays.clear();
+    onSelectionChanged();
+
+
+    // Clear previous state.
+    monthModels.evictAll();
+    selectableMasks.clear();
+    displayOnly = false;
+  }
+
+  /**
+   * Replaces {@link #months} with the months from {@code fromMonth} to {@code toMonth}.  Only the
+   * month descriptors are created here; labels and cell grids are built lazily when the adapter
+   * binds a month.
+   */
+  private void fillMonths(int fromMonth, int toMonth) {
+    months.clear();
+    firstMonth = fromMonth;
+    for (int m = fromMonth; m <= toMonth; m++) {
+      MonthDescriptor month = newMonth(m);
+      if (Logr.DEBUG) {
+        Logr.d("Adding month %s", month);
+      }
+      months.add(month);
+    }
+  }
+
+  private MonthDescriptor newMonth(int monthOrdinal) {
+    return new MonthDescriptor(EpochDays.monthOf(monthOrdinal), EpochDays.yearOf(monthOrdinal),
+            EpochDays.toDate(EpochDays.firstDayOfMonth(monthOrdinal), timeZone), null);
+  }
+
+  /** Starts a background load of the months if an executor is set. */
+  private void startLoading() {
+    loadGeneration++;
+    loading = false;
+    if (backgroundExecutor != null) {
+      // Start once the FluentInitializer calls are done, so the load begins at the selected month.
+      loading = true;
+      final int generation = loadGeneration;
+      host.post(new Runnable() {
+        @Override public void run() {
+          int anchor = selectedDays.isEmpty()
+                  ? EpochDays.fromMillis(System.currentTimeMillis(), timeZone)
+                  : selectedDays.min();
+          startBackgroundLoad(generation, EpochDays.monthOrdinalOf(anchor) - firstMonth);
+        }
+      });
+    }
+  }
+
+  /** Moves the window of an open-ended calendar so that it is centered on {@code day}'s month. */
+  private void centerWindowOn(int day) {
+    int minMonth = EpochDays.monthOrdinalOf(minDay);
+    int maxMonth = EpochDays.monthOrdinalOf(maxDay - 1);
+    int from = Math.max(minMonth, EpochDays.monthOrdinalOf(day) - WINDOW_MONTHS / 2);
+    int to = Math.min(maxMonth, from + WINDOW_MONTHS - 1);
+    fillMonths(Math.max(minMonth, to - WINDOW_MONTHS + 1), to);
+    onWindowMoved();
+  }
+
+  /** Loads the months of a moved window in the background, starting at {@code anchorIndex}. */
+  private void reloadWindow(int anchorIndex) {
+    if (backgroundExecutor != null) {
+      loading = true;
+      startBackgroundLoad(++loadGeneration, anchorIndex);
+    }
+  }
+
+  /**
+   * Returns the list position of {@code day}'s month like {@link #monthIndexOf(int)}, first moving
+   * the window of an open-ended calendar onto the month if it's outside it.
+   */
+  private int showMonthOf(int day) {
+    int index = monthIndexOf(day);
+    if (index < 0 && openEnded && isInRange(day)) {
+      centerWindowOn(day);
+      index = monthIndexOf(day);
+      reloadWindow(index);
+      host.onMonthsChanged();
+    }
+    return index;
+  }
+
+  /** Called as the list binds {@code position}; moves the window when it nears an end. */
+  private void onMonthBound(int position) {
+    if (openEnded && !windowShiftPending
+            && (position < WINDOW_EDGE || position >= months.size() - WINDOW_EDGE)) {
+      // The list is in the middle of a layout pass; change the adapter once it's done.
+      windowShiftPending = true;
+      host.post(new Runnable() {
+        @Override public void run() {
+          windowShiftPending = false;
+          shiftWindow();
+        }
+      });
+    }
+  }
+
+  /**
+   * Adds {@value #WINDOW_STEP} months at the end of the window the list is close to and drops as
+   * many from the other end, keeping the visible month at the same place on screen.
+   */
+  private void shiftWindow() {
+    int firstVisible = host.getFirstVisibleMonth();
+    if (!openEnded || months.isEmpty() || firstVisible < 0) {
+      return;
+    }
+    int topOffset = host.getFirstVisibleTop();
+    int lastMonth = firstMonth + months.size() - 1;
+    int shift = 0;
+    if (firstVisible < WINDOW_EDGE && firstMonth > EpochDays.monthOrdinalOf(minDay)) {
+      int add = Math.min(WINDOW_STEP, firstMonth - EpochDays.monthOrdinalOf(minDay));
+      for (int i = 1; i <= add; i++) {
+        months.add(0, newMonth(firstMonth - i));
+      }
+      firstMonth -= add;
+      shift = add;
+      host.onMonthsInserted(0, add);
+      int excess = months.size() - WINDOW_MONTHS;
+      if (excess > 0) {
+        months.subList(months.size() - excess, months.size()).clear();
+        host.onMonthsRemoved(months.size(), excess);
+      }
+    } else if (host.getLastVisibleMonth() >= months.size() - WINDOW_EDGE
+            && lastMonth < EpochDays.monthOrdinalOf(maxDay - 1)) {
+      int add = Math.min(WINDOW_STEP, EpochDays.monthOrdinalOf(maxDay - 1) - lastMonth);
+      for (int i = 1; i <= add; i++) {
+        months.add(newMonth(lastMonth + i));
+      }
+      host.onMonthsInserted(months.size() - add, add);
+      int excess = months.size() - WINDOW_MONTHS;
+      if (excess > 0) {
+        months.subList(0, excess).clear();
+        firstMonth += excess;
+        shift = -excess;
+        host.onMonthsRemoved(0, excess);
+      }
+    } else {
+      return;
+    }
+    Logr.d("Moved the month window to %d..%d", firstMonth, firstMonth + months.size() - 1);
+    onWindowMoved();
+    reloadWindow(firstVisible + shift);
+    host.showMonth(firstVisible + shift, topOffset);
+  }
+
+  /** Drops the state kept for months that left the window. */
+  private void onWindowMoved() {
+    int lastMonth = firstMonth + months.size() - 1;
+    for (int i = selectableMasks.size() - 1; i >= 0; i--) {
+      int key = selectableMasks.keyAt(i);
+      if (key < firstMonth || key > lastMonth) {
+        selectableMasks.removeAt(i);
+      }
+    }
+  }
+
+  /** Returns the state to save for the picker, or {@code superState} if it isn't initialized. */
+  Parcelable saveState(Parcelable superState) {
+    if (months.isEmpty()) {
+      return superState;
+    }
+    SavedState state = new SavedState(superState);
+    state.timeZoneId = timeZone.getID();
+    state.language = locale.getLanguage();
+    state.country = locale.getCountry();
+    state.variant = locale.getVariant();
+    state.minDay = minDay;
+    state.maxDay = maxDay;
+    state.openEnded = openEnded;
+    state.firstMonth = firstMonth;
+    state.monthCount = months.size();
+    state.selectionMode = selectionMode.name();
+    state.displayOnly = displayOnly;
+    state.selectedRuns = selectedDays.toRunArray();
+    int firstVisible = Math.max(0, Math.min(months.size() - 1, host.getFirstVisibleMonth()));
+    state.firstVisibleMonth = firstMonth + firstVisible;
+    state.firstVisibleTop = host.getFirstVisibleTop();
+    return state;
+  }
+
+  /**
+   * Restores the range, mode, selection and scroll position without the host calling
+   * {@code init} again.  As with init, only the month descriptors are recreated; grids and labels
+   * are still built as months are bound.
+   */
+  void restoreState(SavedState ss) {
+    setUp(TimeZone.getTimeZone(ss.timeZoneId), new Locale(ss.language, ss.country, ss.variant));
+    minDay = ss.minDay;
+    maxDay = ss.maxDay;
+    openEnded = ss.openEnded;
+    fillMonths(ss.firstMonth, ss.firstMonth + ss.monthCount - 1);
+    selectionMode = SelectionMode.valueOf(ss.selectionMode);
+    displayOnly = ss.displayOnly;
+    for (int i = 0; i < ss.selectedRuns.length; i += 2) {
+      selectedDays.addRange(ss.selectedRuns[i], ss.selectedRuns[i + 1]);
+    }
+    // Listeners have seen this selection before the state was saved.
+    deliveredDays.setTo(selectedDays);
+    publishSelection();
+
+    startLoading();
+    host.onMonthsChanged();
+    host.showMonth(ss.firstVisibleMonth - firstMonth, ss.firstVisibleTop);
+  }
+
+  /** Picker state saved across configuration changes and process death. */
+  static class SavedState extends View.BaseSavedState {
+    String timeZoneId;
+    String language;
+    String country;
+    String variant;
+    int minDay;
+    int maxDay;
+    boolean openEnded;
+    int firstMonth;
+    int monthCount;
+    /** The mode's name, so reordering {@link SelectionMode} can't change a saved mode. */
+    String selectionMode;
+    boolean displayOnly;
+    /** The selection as epoch-day runs, see {@link EpochDaySet#toRunArray()}. */
+    int[] selectedRuns;
+    int firstVisibleMonth;
+    int firstVisibleTop;
+
+    SavedState(Parcelable superState) {
+      super(superState);
+    }
+
+    private SavedState(Parcel in) {
+      super(in);
+      timeZoneId = in.readString();
+      language = in.readString();
+      country = in.readString();
+      variant = in.readString();
+      minDay = in.readInt();
+      maxDay = in.readInt();
+      openEnded = in.readInt() != 0;
+      firstMonth = in.readInt();
+      monthCount = in.readInt();
+      selectionMode = in.readString();
+      displayOnly = in.readInt() != 0;
+      selectedRuns = in.createIntArray();
+      firstVisibleMonth = in.readInt();
+      firstVisibleTop = in.readInt();
+    }
+
+    @Override public void writeToParcel(Parcel out, int flags) {
+      super.writeToParcel(out, flags);
+      out.writeString(timeZoneId);
+      out.writeString(language);
+      out.writeString(country);
+      out.writeString(variant);
+      out.writeInt(minDay);
+      out.writeInt(maxDay);
+      out.writeInt(openEnded ? 1 : 0);
+      out.writeInt(firstMonth);
+      out.writeInt(monthCount);
+      out.writeString(selectionMode);
+      out.writeInt(displayOnly ? 1 : 0);
+      out.writeIntArray(selectedRuns);
+      out.writeInt(firstVisibleMonth);
+      out.writeInt(firstVisibleTop);
+    }
+
+    public static final Parcelable.Creator<SavedState> CREATOR =
+            new Parcelable.Creator<SavedState>() {
+              @Override public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+              }
+
+              @Override public SavedState[] newArray(int size) {
+                return new SavedState[size];
+              }
+            };
+  }
+
+  void setSelectionMode(SelectionMode mode) {
+    selectionMode = mode;
+    publishSelection();
+    host.onMonthsChanged();
+  }
+
+  /** Selects the initial dates of a {@link CalendarPickerView.FluentInitializer}. */
+  void setSelectedDates(Collection<Date> selectedDates) {
+    if (selectedDates != null) {
+      // One pass over the batch, and no scroll of its own: the one below is enough.
+      applySelection(selectionFor(selectedDates), false, false);
+    }
+    scrollToSelectedDates();
+
+    host.onMonthsChanged();
+  }
+
+  /** See {@link CalendarPickerView#selectDates(Collection, boolean)}. */
+  int selectDates(Collection<Date> dates, boolean smoothScroll) {
+    EpochDaySet target = selectionFor(dates);
+    if (selectionMode == SelectionMode.MULTIPLE) {
+      addAll(selectedDays, target);
+    }
+    return applySelection(target, true, smoothScroll);
+  }
+
+  /** See {@link CalendarPickerView#deselectDates(Collection)}. */
+  int deselectDates(Collection<Date> dates) {
+    EpochDaySet target = new EpochDaySet();
+    addAll(selectedDays, target);
+    int before = target.size();
+    for (Date date : dates) {
+      validateDate(date);
+      target.remove(EpochDays.fromDate(date, timeZone));
+    }
+    if (selectionMode == SelectionMode.RANGE && target.size() != before) {
+      // A range with a hole in it isn't a range any more.
+      target.clear();
+    }
+    int removed = selectedDays.size() - target.size();
+    applySelection(target, false, false);
+    return removed;
+  }
+
+  /** See {@link CalendarPickerView#setSelection(Collection)}. */
+  void setSelection(Collection<Date> dates, boolean smoothScroll) {
+    applySelection(selectionFor(dates), true, smoothScroll);
+  }
+
+  /** Returns the selected dates, in order. */
+  List<Date> getSelectedDates() {
+    List<Date> dates = new ArrayList<>(selectedDays.size());
+    for (int r = 0; r < selectedDays.runCount(); r++) {
+      for (int day = selectedDays.runStart(r); day < selectedDays.runEnd(r); day++) {
+        dates.add(EpochDays.toDate(day, timeZone));
+      }
+    }
+    return dates;
+  }
+
+  /**
+   * Validates a batch of dates and returns the selectable ones as a selection for the current
+   * mode: a range from the first to the last date in RANGE mode, the dates themselves otherwise.
+   * Throws before anything changes if a date is null or out of range, or if the mode can't take
+   * that many dates.
+   */
+  private EpochDaySet selectionFor(Collection<Date> dates) {
+    checkDateCount(selectionMode, dates.size());
+    EpochDaySet days = new EpochDaySet();
+    for (Date date : dates) {
+      validateDate(date);
+      int day = EpochDays.fromDate(date, timeZone);
+      if (isSelectableDay(day)) {
+        days.add(day);
+      }
+    }
+    if (selectionMode == SelectionMode.RANGE && days.size() == 2) {
+      days.addRange(days.min(), days.max() + 1);
+    }
+    return days;
+  }
+
+  /** Throws if {@code mode} can't take {@code count} dates. */
+  static void checkDateCount(SelectionMode mode, int count) {
+    if (mode == SelectionMode.SINGLE && count > 1) {
+      throw new IllegalArgumentException("SINGLE mode can't be used with multiple selectedDates");
+    }
+    if (mode == SelectionMode.RANGE && count > 2) {
+      throw new IllegalArgumentException(
+              "RANGE mode only allows two selectedDates.  You tried to pass " + count);
+    }
+  }
+
+  private static void addAll(EpochDaySet from, EpochDaySet to) {
+    for (int r = 0; r < from.runCount(); r++) {
+      to.addRange(from.runStart(r), from.runEnd(r));
+    }
+  }
+
+  /**
+   * Replaces the selection with {@code target}, updating only the cached cells whose selection
+   * changed, then rebinds the changed cells once and, if {@code scroll}, scrolls once to the first
+   * newly selected day.  Returns the number of newly selected days.  The change is worked out run
+   * by run, so its cost doesn't grow with the number of days selected or unselected.
+   */
+  private int applySelection(EpochDaySet target, boolean scroll, boolean smoothScroll) {
+    final int mask = MonthModel.FLAG_SELECTED | MonthModel.FLAG_START | MonthModel.FLAG_END
+            | MonthModel.RANGE_MASK;
+    int[] addedRuns = target.runsNotIn(selectedDays);
+    int firstAdded = addedRuns.length == 0 ? Integer.MAX_VALUE : addedRuns[0];
+    int added = 0;
+    for (int i = 0; i < addedRuns.length; i += 2) {
+      added += addedRuns[i + 1] - addedRuns[i];
+    }
+    if (selectionMode == SelectionMode.RANGE) {
+      if (target.isEmpty()) {
+        clearCachedFlags(mask);
+      } else {
+        int oldStart = selectedDays.isEmpty() ? target.min() : selectedDays.min();
+        int oldEnd = selectedDays.isEmpty() ? target.max() : selectedDays.max();
+        updateRange(oldStart, oldEnd, target.min(), target.max());
+      }
+    } else {
+      updateCachedCells(selectedDays.runsNotIn(target), mask, 0);
+      updateCachedCells(addedRuns, mask, MonthModel.FLAG_SELECTED);
+    }
+    selectedDays.setTo(target);
+
+    host.onCellsChanged();
+    onSelectionChanged();
+    if (scroll && firstAdded != Integer.MAX_VALUE) {
+      int index = showMonthOf(firstAdded);
+      if (index >= 0) {
+        scrollToSelectedMonth(index, smoothScroll);
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Returns whether {@code day} is in range and passes the selectable filter.  The filter is asked
+   * now if a background load hasn't got to the month yet, as for {@link #selectDate}.
+   */
+  private boolean isSelectableDay(int day) {
+    if (!isInRange(day)) {
+      return false;
+    }
+    int monthOrdinal = EpochDays.monthOrdinalOf(day);
+    ensureSelectableDays(monthOrdinal);
+    return (getSelectableDays(monthOrdinal)
+            & 1 << day - EpochDays.firstDayOfMonth(monthOrdinal)) != 0;
+  }
+
+  void setShortWeekdays(String[] newShortWeekdays) {
+    formats = CalendarFormats.get(locale, timeZone, monthNamePattern, dayNamePattern,
+            newShortWeekdays.clone());
+    // The header row holds the weekday names, so its measured height may change.
+    measureCache.clear();
+  }
+
+  void setDisplayOnly() {
+    displayOnly = true;
+  }
+
+  private void scrollToSelectedMonth(final int selectedIndex) {
+    scrollToSelectedMonth(selectedIndex, false);
+  }
+
+  private void scrollToSelectedMonth(final int selectedIndex, final boolean smoothScroll) {
+    host.post(new Runnable() {
+      @Override public void run() {
+        Logr.d("Scrolling to position %d", selectedIndex);
+
+        if (smoothScroll) {
+          host.smoothScrollToMonth(selectedIndex);
+        } else {
+          host.showMonth(selectedIndex, 0);
+        }
+      }
+    });
+  }
+  /* 滚到选择的日期*/
+  void scrollToSelectedDates() {
+    // Scroll to the earliest selected month, or else to today's month.
+    int selectedIndex = selectedDays.isEmpty() ? -1 : showMonthOf(selectedDays.min());
+    if (selectedIndex < 0) {
+      selectedIndex = showMonthOf(EpochDays.fromMillis(System.currentTimeMillis(), timeZone));
+    }
+    if (selectedIndex >= 0) {
+      scrollToSelectedMonth(selectedIndex);
+    }
+  }
+
+  boolean scrollToDate(Date date) {
+    int selectedIndex = showMonthOf(EpochDays.fromDate(date, timeZone));
+    if (selectedIndex >= 0) {
+      scrollToSelectedMonth(selectedIndex);
+      return true;
+    }
+    return false;
+  }
+
+  void setTitleTypeface(Typeface titleTypeface) {
+    this.titleTypeface = titleTypeface;
+    host.onMonthsChanged();
+  }
+
+  void setDateTypeface(Typeface dateTypeface) {
+    this.dateTypeface = dateTypeface;
+    // The weekday headers are drawn in the date typeface too.
+    measureCache.clear();
+    host.onMonthsChanged();
+  }
+
+  /** Throws if there is nothing to lay out yet. */
+  void checkInitialized() {
+    if (months.isEmpty()) {
+      throw new IllegalStateException(
+              "Must have at least one month to display.  Did you forget to call init()?");
+    }
+  }
+
+  Date getSelectedDate() {
+    return selectedDays.isEmpty() ? null : EpochDays.toDate(selectedDays.min(), timeZone);
+  }
+
+  /** Returns a string summarizing what the client sent us for init() params. */
+  private static String dbg(Date minDate, Date maxDate) {
+    return "minDate: " + minDate + "\nmaxDate: " + maxDate;
+  }
+
+  private class CellClickedListener implements MonthView.Listener {
+    @Override public void handleClick(MonthCellDescriptor cell) {
+      //后面会加进去的
+      Date clickedDate = cell.getDate();
+
+      if (cellClickInterceptor != null && cellClickInterceptor.onCellClicked(clickedDate)) {
+        return;
+      }
+
+      if (!cell.isSelectable()) {
+        if (invalidDateListener != null) {
+          invalidDateListener.onInvalidDateSelected(clickedDate);
+        }
+      } else {
+        boolean wasSelected = doSelectDate(clickedDate, cell);
+        if(choiceListener!=null){
+          if(wasSelected){
+            //区分单选和双选
+            switch (selectionMode){
+              case SINGLE:
+                choiceListener.onSingleChoice(clickedDate);
+                break;
+              case MULTIPLE:
+              case RANGE:
+              if(selectedDays.size()>=2){
+                choiceListener.onMutipleChoice(
+                        EpochDays.toDate(selectedDays.min(), timeZone),
+                        EpochDays.toDate(selectedDays.max(), timeZone));
+              }
+                break;
+            }
+          }
+        }
+
+        if (dateListener != null) {
+          if (wasSelected) {
+            dateListener.onDateSelected(clickedDate);
+          } else {
+            dateListener.onDateUnselected(clickedDate);
+          }
+        }
+      }
+    }
+  }
+
+  boolean selectDate(Date date, boolean smoothScroll) {
+    validateDate(date);
+
+    MonthCellWithMonthIndex monthCellWithMonthIndex = getMonthCellWithIndexByDate(date);
+    if (monthCellWithMonthIndex == null) {
+      return false;
+    }
+    boolean wasSelected = doSelectDate(date, monthCellWithMonthIndex.cell);
+    if (wasSelected) {
+      scrollToSelectedMonth(monthCellWithMonthIndex.monthIndex, smoothScroll);
+    }
+    return wasSelected;
+  }
+
+  //合法化数据
+  private void validateDate(Date date) {
+    checkDate(date, minDay, maxDay, timeZone);
+  }
+
+  /** Returns the epoch day of {@code date}, throwing if it is null or not in the range given. */
+  static int checkDate(Date date, int minDay, int maxDay, TimeZone timeZone) {
+    if (date == null) {
+      throw new IllegalArgumentException("Selected date must be non-null.");
+    }
+    int day = EpochDays.fromDate(date, timeZone);
+    if (day < minDay || day >= maxDay) {
+      throw new IllegalArgumentException(String.format(
+              "SelectedDate must be between minDate and maxDate."
+                      + "%nminDate: %s%nmaxDate: %s%nselectedDate: %s",
+              EpochDays.toDate(minDay, timeZone), EpochDays.toDate(maxDay, timeZone), date));
+    }
+    return day;
+  }
+   //做选择日期的事件
+  private boolean doSelectDate(Date date, MonthCellDescriptor cell) {
+    // Sanitize input: only the day of the date matters.
+    int day = EpochDays.fromDate(date, timeZone);
+
+
+    switch (selectionMode) {
+      case SINGLE:
+        clearOldSelections();
+        cell.setSelected(true);
+        selectedDays.add(day);
+        break;
+      case MULTIPLE:
+        // Any number of dates; selecting a selected date unselects it.
+        if (selectedDays.remove(day)) {
+          cell.setSelected(false);
+          host.onCellsChanged();
+          onSelectionChanged();
+          return false;
+        }
+        cell.setSelected(true);
+        selectedDays.add(day);
+        break;
+      case RANGE:
+        selectRange(day);
+        break;
+      default:
+        throw new IllegalStateException("Unknown selectionMode " + selectionMode);
+    }
+
+
+    // Rebind the cells that changed.
+    host.onCellsChanged();
+    onSelectionChanged();
+    return date != null;
+  }
+
+  /**
+   * Extends or restarts the selected range with {@code day}.  A complete range, or a day before
+   * the single selected one, starts a new range; a later day completes it.  The days dropped
+   * aren't reported to {@link #dateListener}, as documented on {@link OnDateSelectedListener}.
+   */
+  private void selectRange(int day) {
+    int oldStart = selectedDays.isEmpty() ? day : selectedDays.min();
+    int oldEnd = selectedDays.isEmpty() ? day : selectedDays.max();
+    int newStart = day;
+    if (selectedDays.size() == 1 && day >= oldStart) {
+      newStart = oldStart;
+    }
+    selectedDays.clear();
+    selectedDays.addRange(newStart, day + 1);
+    updateRange(oldStart, oldEnd, newStart, day);
+  }
+
+  /**
+   * Brings the cached months up to date after the selected range moved from
+   * {@code [oldStart, oldEnd]} to {@code [newStart, newEnd]}.  Only the cells of cached months
+   * covered by either range are touched, so the cost doesn't depend on how long the range is.
+   */
+  private void updateRange(int oldStart, int oldEnd, int newStart, int newEnd) {
+    final int mask = MonthModel.FLAG_SELECTED | MonthModel.FLAG_START | MonthModel.FLAG_END
+            | MonthModel.RANGE_MASK;
+    for (int i = 0; i < monthModels.size(); i++) {
+      MonthModel month = monthModels.valueAt(i);
+      int first = EpochDays.firstDayOfMonth(month.getMonthOrdinal());
+      int end = first + EpochDays.daysInMonth(month.getMonthOrdinal());
+      int from = Math.max(first, Math.min(oldStart, newStart));
+      int to = Math.min(end - 1, Math.max(oldEnd, newEnd));
+      for (int day = from; day <= to; day++) {
+        boolean inOld = day >= oldStart && day <= oldEnd;
+        if (!inOld && (day < newStart || day > newEnd)) {
+          continue;
+        }
+        month.setFlags(month.indexOf(day), mask, rangeFlags(day, newStart, newEnd));
+      }
+    }
+  }
+
+  /** Returns the selection flags of {@code day} when {@code [start, end]} is selected. */
+  private static int rangeFlags(int day, int start, int end) {
+    if (day < start || day > end) {
+      return 0;
+    }
+    if (start == end) {
+      return MonthModel.FLAG_SELECTED | MonthModel.FLAG_START;
+    }
+    if (day == start) {
+      return MonthModel.FLAG_SELECTED | MonthModel.FLAG_START | MonthModel.FLAG_RANGE_FIRST;
+    }
+    if (day == end) {
+      return MonthModel.FLAG_SELECTED | MonthModel.FLAG_END | MonthModel.FLAG_RANGE_LAST;
+    }
+    return MonthModel.FLAG_SELECTED | MonthModel.FLAG_RANGE_MIDDLE;
+  }
+
+  private static int monthKey(MonthDescriptor month) {
+    return EpochDays.monthOrdinal(month.getYear(), month.getMonth());
+  }
+
+  private boolean isInRange(int day) {
+    return day >= minDay && day < maxDay;
+  }
+
+  /** Returns the list position of the month containing {@code day}, or -1 if it isn't shown. */
+  int monthIndexOf(int day) {
+    return positionOf(EpochDays.monthOrdinalOf(day));
+  }
+
+  /** Returns the list position of the month {@code monthOrdinal}, or -1 if it isn't shown. */
+  int positionOf(int monthOrdinal) {
+    int index = monthOrdinal - firstMonth;
+    return index >= 0 && index < months.size() ? index : -1;
+  }
+
+  /** Returns the month ordinal of the month at {@code position}, which is its stable id. */
+  int monthOrdinalAt(int position) {
+    return firstMonth + position;
+  }
+
+  /**
+   * Sets the flags of the days of {@code runs}, in the format of {@link EpochDaySet#toRunArray()},
+   * that are in cached months.  Months that aren't cached pick up the selection from
+   * {@link #selectedDays} when they're built.
+   */
+  private void updateCachedCells(int[] runs, int mask, int flags) {
+    for (int m = 0; m < monthModels.size(); m++) {
+      MonthModel month = monthModels.valueAt(m);
+      int first = EpochDays.firstDayOfMonth(month.getMonthOrdinal());
+      int end = first + EpochDays.daysInMonth(month.getMonthOrdinal());
+      for (int i = 0; i < runs.length && runs[i] < end; i += 2) {
+        for (int day = Math.max(first, runs[i]); day < Math.min(end, runs[i + 1]); day++) {
+          month.setFlags(month.indexOf(day), mask, flags);
+        }
+      }
+    }
+  }
+
+  //清楚旧的选择
+  private void clearOldSelections() {
+    // De-select the currently-selected cells.
+    clearCachedFlags(MonthModel.FLAG_SELECTED);
+    if (dateListener != null) {
+      for (int r = 0; r < selectedDays.runCount(); r++) {
+        for (int day = selectedDays.runStart(r); day < selectedDays.runEnd(r); day++) {
+          dateListener.onDateUnselected(EpochDays.toDate(day, timeZone));
+        }
+      }
+    }
+    selectedDays.clear();
+  }
+
+  /**
+   * Clears {@code mask} on every cell of the cached months.  This costs the same however many
+   * dates are selected.
+   */
+  private void clearCachedFlags(int mask) {
+    for (int m = 0; m < monthModels.size(); m++) {
+      MonthModel month = monthModels.valueAt(m);
+      for (int i = 0; i < month.getCellCount(); i++) {
+        month.setFlags(i, mask, 0);
+      }
+    }
+  }
+
+  /** Hold a cell with a month-index. */
+  private static class MonthCellWithMonthIndex {
+    public MonthCellDescriptor cell;
+    public int monthIndex;
+
+    public MonthCellWithMonthIndex(MonthCellDescriptor cell, int monthIndex) {
+      this.cell = cell;
+      this.monthIndex = monthIndex;
+    }
+  }
+
+  /**
+   * Return cell and month-index (for scrolling) for a given Date.  Both are computed from the
+   * date's epoch day: the month index is its month ordinal minus the first month's, and the cell
+   * index its distance from the grid's top-left day (row {@code index / 7}, column
+   * {@code index % 7}).
+   */
+  private MonthCellWithMonthIndex getMonthCellWithIndexByDate(Date date) {
+    int day = EpochDays.fromDate(date, timeZone);
+    int index = showMonthOf(day);
+    if (index < 0) {
+      return null;
+    }
+    ensureSelectableDays(EpochDays.monthOrdinalOf(day));
+    MonthModel model = getMonthModel(index);
+    int cell = model.indexOf(day);
+    if (cell >= 0 && model.is(cell, MonthModel.FLAG_SELECTABLE)) {
+      return new MonthCellWithMonthIndex(model.getCell(cell), index);
+    }
+    return null;
+  }
+
+  boolean isCanvasMonths() {
+    return canvasMonths;
+  }
+
+  /** See {@link CalendarPickerView#setCanvasMonths(boolean)}. */
+  void setCanvasMonths(boolean canvasMonths) {
+    this.canvasMonths = canvasMonths;
+    host.onMonthsChanged();
+  }
+
+  /** See {@link CalendarPickerView#setMonthLayers(boolean)}. */
+  void setMonthLayers(boolean monthLayers) {
+    this.monthLayers = monthLayers;
+    host.onMonthsChanged();
+  }
+
+  /** Creates a month view styled for this picker; it is also a {@link MonthRenderer}. */
+  View createMonthView(ViewGroup parent, LayoutInflater inflater) {
+    long start = Tracer.begin(Tracer.SECTION_INFLATE);
+    View view;
+    if (canvasMonths) {
+      view = new MonthCanvasView(parent.getContext(), formats, firstDayOfWeek, listener,
+              dividerColor, dayBackgroundResId, dayTextColorResId, titleTextColor, displayHeader,
+              headerTextColor, decorators, dayViewAdapter);
+    } else {
+      MonthView monthView = MonthView.create(parent, inflater, formats, firstDayOfWeek, listener,
+              dividerColor, dayBackgroundResId, dayTextColorResId, titleTextColor, displayHeader,
+              headerTextColor, decorators, dayViewAdapter);
+      monthView.grid.setMeasureCache(measureCache);
+      view = monthView;
+    }
+    Tracer.end(Tracer.SECTION_INFLATE, start);
+    return view;
+  }
+
+  /** Binds the month at {@code position} to {@code monthView}. */
+  void bindMonthView(MonthRenderer monthView, int position) {
+    long start = Tracer.begin(Tracer.SECTION_BIND);
+    monthView.setDecorators(decorators);
+    MonthDescriptor month = months.get(position);
+    if (month.getLabel() == null) {
+      month.setLabel(formats.monthLabel(monthKey(month)));
+    }
+    MonthModel model = getMonthModel(position);
+    if (model.getDecorators() != monthDecorators) {
+      decorate(model);
+    }
+    monthView.init(month, model, displayOnly, titleTypeface, dateTypeface);
+    applyMonthLayer(monthView);
+    Tracer.end(Tracer.SECTION_BIND, start);
+    onMonthBound(position);
+  }
+
+  /** Puts the grid of a month (all of a canvas month) in a hardware layer if that's enabled. */
+  private void applyMonthLayer(MonthRenderer monthView) {
+    View target = monthView instanceof MonthView ? ((MonthView) monthView).grid : (View) monthView;
+    int layerType = monthLayers ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE;
+    if (target.getLayerType() != layerType) {
+      target.setLayerType(layerType, null);
+    }
+  }
+
+  /**
+   * Returns whether {@code monthView} is bound to the model that is cached for its month, i.e.
+   * whether rebinding its dirty cells brings it up to date.
+   */
+  boolean isCurrent(MonthRenderer monthView) {
+    MonthModel model = monthView.getModel();
+    return model != null && monthModels.get(model.getMonthOrdinal()) == model;
+  }
+
+  /**
+   * Returns the number of cached month models.  Only cached months are updated when the selection
+   * changes.
+   */
+  int cachedModelCount() {
+    return monthModels.size();
+  }
+
+  /** Returns the cached month model {@code index}, from 0 to {@link #cachedModelCount()}. */
+  MonthModel cachedModelAt(int index) {
+    return monthModels.valueAt(index);
+  }
+
+  /** Returns the model of the month at {@code position}, building it if it isn't cached. */
+  MonthModel getMonthModel(int position) {
+    MonthDescriptor month = months.get(position);
+    int key = monthKey(month);
+    MonthModel model = monthModels.get(key);
+    if (model == null) {
+      model = buildMonthModel(key);
+      monthModels.put(key, model);
+    }
+    return model;
+  }
+
+  MonthModel buildMonthModel(int monthOrdinal) {
+    MonthModel model = new MonthModel(monthOrdinal, firstDayOfWeek, timeZone);
+    int firstDay = EpochDays.firstDayOfMonth(monthOrdinal);
+    int endDay = Math.min(firstDay + EpochDays.daysInMonth(monthOrdinal), maxDay);
+    int selectable = getSelectableDays(monthOrdinal);
+    for (int day = Math.max(firstDay, minDay); day < endDay; day++) {
+      if ((selectable & 1 << day - firstDay) != 0) {
+        model.set(model.indexOf(day), MonthModel.FLAG_SELECTABLE, true);
+      }
+    }
+    if (heatmap != null) {
+      model.setHeatmap(heatmap);
+    }
+    int today = model.indexOf(todayDay);
+    if (today >= 0) {
+      model.set(today, MonthModel.FLAG_TODAY, true);
+    }
+    if (!selectedDays.isEmpty()) {
+      // Walk the selected runs that overlap the month instead of testing every cell.
+      int run = Math.max(selectedDays.floorRun(firstDay), 0);
+      for (; run < selectedDays.runCount() && selectedDays.runStart(run) < endDay; run++) {
+        int end = Math.min(selectedDays.runEnd(run), endDay);
+        for (int day = Math.max(selectedDays.runStart(run), firstDay); day < end; day++) {
+          int flags = MonthModel.FLAG_SELECTED;
+          if (selectionMode == SelectionMode.RANGE) {
+            flags = rangeFlags(day, selectedDays.min(), selectedDays.max());
+          }
+          model.set(model.indexOf(day), flags, true);
+        }
+      }
+    }
+    return model;
+  }
+
+  /**
+   * Returns the selectable days of a month as a bit mask (bit {@code d - 1} for day of month
+   * {@code d}).  The filter is asked once per month; its answer is kept until it is invalidated.
+   */
+  private int getSelectableDays(int monthOrdinal) {
+    if (selectableFilter == null) {
+      return ALL_DAYS;
+    }
+    int index = selectableMasks.indexOfKey(monthOrdinal);
+    if (index >= 0) {
+      return selectableMasks.valueAt(index);
+    }
+    if (loading) {
+      // Drawn as not selectable until the background load publishes the month.
+      return 0;
+    }
+    int mask = selectableFilter.getSelectableDays(EpochDays.yearOf(monthOrdinal),
+            EpochDays.monthOf(monthOrdinal));
+    selectableMasks.put(monthOrdinal, mask);
+    return mask;
+  }
+
+  /**
+   * Asks the filter about the month now if a background load hasn't answered it yet, so that
+   * programmatic selection doesn't depend on how far the load has got.
+   */
+  private void ensureSelectableDays(int monthOrdinal) {
+    if (selectableFilter != null && selectableMasks.indexOfKey(monthOrdinal) < 0) {
+      applySelectableDays(monthOrdinal, selectableFilter.getSelectableDays(
+              EpochDays.yearOf(monthOrdinal), EpochDays.monthOf(monthOrdinal)));
+    }
+  }
+
+  /**
+   * Records a month's selectable days and updates its cached model, if any.  Returns whether that
+   * model has cells to rebind.
+   */
+  private boolean applySelectableDays(int monthOrdinal, int mask) {
+    selectableMasks.put(monthOrdinal, mask);
+    MonthModel model = monthModels.get(monthOrdinal);
+    if (model == null) {
+      return false;
+    }
+    int firstDay = EpochDays.firstDayOfMonth(monthOrdinal);
+    int endDay = Math.min(firstDay + EpochDays.daysInMonth(monthOrdinal), maxDay);
+    for (int day = Math.max(firstDay, minDay); day < endDay; day++) {
+      model.set(model.indexOf(day), MonthModel.FLAG_SELECTABLE,
+              (mask & 1 << day - firstDay) != 0);
+    }
+    return model.hasDirtyCells();
+  }
+
+  /** See {@link CalendarPickerView#setBackgroundExecutor(Executor)}. */
+  void setBackgroundExecutor(Executor executor) {
+    backgroundExecutor = executor;
+  }
+
+  /** Starts loading the months outward from {@code anchorIndex} on the background executor. */
+  private void startBackgroundLoad(int generation, int anchorIndex) {
+    if (generation != loadGeneration) {
+      return;
+    }
+    anchorIndex = Math.max(0, Math.min(months.size() - 1, anchorIndex));
+    Logr.d("Loading %d months in the background from position %d", months.size(), anchorIndex);
+    // Months whose mask and label are both known already, e.g. after the window moved, are skipped.
+    boolean[] loaded = new boolean[months.size()];
+    for (int i = 0; i < loaded.length; i++) {
+      loaded[i] = months.get(i).getLabel() != null
+              && (selectableFilter == null || selectableMasks.indexOfKey(firstMonth + i) >= 0);
+    }
+    backgroundExecutor.execute(new MonthLoader(generation, firstMonth, loaded, anchorIndex,
+            selectableFilter, formats));
+  }
+
+  /**
+   * Called on the main thread with the first {@code count} months computed by a
+   * {@link MonthLoader} since its last call.  The views are told once, and only if a cached month
+   * changed.
+   */
+  void onMonthsLoaded(int generation, int[] monthOrdinals, int[] masks, String[] labels,
+          int count) {
+    if (generation != loadGeneration) {
+      return;
+    }
+    boolean changed = false;
+    for (int i = 0; i < count; i++) {
+      int monthOrdinal = monthOrdinals[i];
+      int index = monthOrdinal - firstMonth;
+      if (index < 0 || index >= months.size()) {
+        continue;
+      }
+      MonthDescriptor month = months.get(index);
+      if (month.getLabel() == null) {
+        month.setLabel(labels[i]);
+      }
+      if (selectableFilter != null && selectableMasks.indexOfKey(monthOrdinal) < 0) {
+        changed |= applySelectableDays(monthOrdinal, masks[i]);
+      }
+    }
+    if (changed) {
+      host.onCellsChanged();
+    }
+  }
+
+  /** Restarts a running background load, which may already have passed the forgotten months. */
+  private void restartBackgroundLoad() {
+    if (loading) {
+      startBackgroundLoad(++loadGeneration, host.getFirstVisibleMonth());
+    }
+  }
+
+  void onLoadFinished(int generation) {
+    if (generation == loadGeneration) {
+      loading = false;
+    }
+  }
+
+  /**
+   * Computes the selectable days and labels of the months on a background thread, starting at the
+   * anchor month and alternating outward, and hands them to the main thread in batches: a message
+   * is posted only when none is pending, and takes every month computed until it runs.
+   */
+  private class MonthLoader implements Runnable {
+    private final int generation;
+    private final int firstMonth;
+    private final boolean[] loaded;
+    private final int anchor;
+    private final MonthSelectableFilter filter;
+    private final CalendarFormats formats;
+    // The months computed and not yet handed over, guarded by this loader.
+    private int[] pendingMonths = new int[8];
+    private int[] pendingMasks = new int[8];
+    private String[] pendingLabels = new String[8];
+    private int pendingCount;
+    private boolean deliveryPosted;
+    private final Runnable deliver = new Runnable() {
+      @Override public void run() {
+        int[] monthOrdinals;
+        int[] masks;
+        String[] labels;
+        int count;
+        synchronized (MonthLoader.this) {
+          monthOrdinals = pendingMonths;
+          masks = pendingMasks;
+          labels = pendingLabels;
+          count = pendingCount;
+          pendingMonths = new int[Math.max(8, count)];
+          pendingMasks = new int[pendingMonths.length];
+          pendingLabels = new String[pendingMonths.length];
+          pendingCount = 0;
+          deliveryPosted = false;
+        }
+        onMonthsLoaded(generation, monthOrdinals, masks, labels, count);
+      }
+    };
+
+    MonthLoader(int generation, int firstMonth, boolean[] loaded, int anchor,
+            MonthSelectableFilter filter, CalendarFormats formats) {
+      this.generation = generation;
+      this.firstMonth = firstMonth;
+      this.loaded = loaded;
+      this.anchor = anchor;
+      this.filter = filter;
+      this.formats = formats;
+    }
+
+    @Override public void run() {
+      final int count = loaded.length;
+      for (int step = 0; step < 2 * count; step++) {
+        if (generation != loadGeneration) {
+          return;
+        }
+        // anchor, anchor - 1, anchor + 1, anchor - 2, ...
+        int index = anchor + ((step & 1) == 0 ? step / 2 : -(step / 2 + 1));
+        if (index < 0 || index >= count || loaded[index]) {
+          continue;
+        }
+        int monthOrdinal = firstMonth + index;
+        int year = EpochDays.yearOf(monthOrdinal);
+        int month = EpochDays.monthOf(monthOrdinal);
+        int mask = filter == null ? ALL_DAYS : filter.getSelectableDays(year, month);
+        hand(monthOrdinal, mask, formats.monthLabel(monthOrdinal));
+      }
+      mainHandler.post(new Runnable() {
+        @Override public void run() {
+          onLoadFinished(generation);
+        }
+      });
+    }
+
+    /** Adds a month to the pending batch, posting its delivery unless one is on its way. */
+    private synchronized void hand(int monthOrdinal, int mask, String label) {
+      if (pendingCount == pendingMonths.length) {
+        pendingMonths = Arrays.copyOf(pendingMonths, pendingCount * 2);
+        pendingMasks = Arrays.copyOf(pendingMasks, pendingCount * 2);
+        pendingLabels = Arrays.copyOf(pendingLabels, pendingCount * 2);
+      }
+      pendingMonths[pendingCount] = monthOrdinal;
+      pendingMasks[pendingCount] = mask;
+      pendingLabels[pendingCount] = label;
+      pendingCount++;
+      if (!deliveryPosted) {
+        deliveryPosted = true;
+        mainHandler.post(deliver);
+      }
+    }
+  }
+
+  /** See {@link CalendarPickerView#invalidateSelectableDates()}. */
+  void invalidateSelectableDates() {
+    selectableMasks.clear();
+    monthModels.evictAll();
+    restartBackgroundLoad();
+    host.onMonthsChanged();
+  }
+
+  /** See {@link CalendarPickerView#invalidateSelectableDates(Date, Date)}. */
+  void invalidateSelectableDates(Date from, Date to) {
+    int first = EpochDays.monthOrdinalOf(EpochDays.fromDate(from, timeZone));
+    int last = EpochDays.monthOrdinalOf(EpochDays.fromDate(to, timeZone));
+    for (int i = selectableMasks.size() - 1; i >= 0; i--) {
+      int key = selectableMasks.keyAt(i);
+      if (key >= first && key <= last) {
+        selectableMasks.removeAt(i);
+      }
+    }
+    for (int i = monthModels.size() - 1; i >= 0; i--) {
+      int key = monthModels.keyAt(i);
+      if (key >= first && key <= last) {
+        monthModels.remove(key);
+      }
+    }
+    restartBackgroundLoad();
+    host.onMonthsChanged();
+  }
+
+  void setOnDateSelectedListener(OnDateSelectedListener listener) {
+    dateListener = listener;
+  }
+
+  /** See {@link CalendarPickerView#setOnSelectionChangedListener(OnSelectionChangedListener, boolean)}. */
+  void setOnSelectionChangedListener(OnSelectionChangedListener listener, boolean nextFrame) {
+    selectionListener = listener;
+    selectionNextFrame = nextFrame;
+    // The listener starts from the current selection.
+    deliveredDays.setTo(selectedDays);
+  }
+
+  /**
+   * Tells the selection listener about the change that just finished, right away or, when it
+   * asked for it, once before the next frame together with any other changes made until then.
+   */
+  private void onSelectionChanged() {
+    publishSelection();
+    if (selectionListener == null) {
+      return;
+    }
+    if (!selectionNextFrame) {
+      dispatchSelectionDelta();
+    } else if (!selectionDispatchPending) {
+      selectionDispatchPending = true;
+      host.postOnAnimation(dispatchSelection);
+    }
+  }
+
+  /**
+   * Publishes a snapshot of {@link #selectedDays}, one version after the current one.  If another
+   * thread has set a selection that isn't applied yet, it is applied first, which publishes the
+   * two merged instead, so that a tap can't overwrite it.
+   */
+  private void publishSelection() {
+    while (true) {
+      SelectionSnapshot current = selectionSnapshot.get();
+      if (appliedSnapshot != null && current != appliedSnapshot) {
+        pullSelection();
+        return;
+      }
+      SelectionSnapshot next = SelectionSnapshot.of(selectedDays,
+              current == null ? 0 : current.getVersion() + 1, timeZone, selectionMode, minDay,
+              maxDay, selectableFilter);
+      if (selectionSnapshot.compareAndSet(current, next)) {
+        appliedSnapshot = next;
+        return;
+      }
+    }
+  }
+
+  /** See {@link CalendarPickerView#getSelectionSnapshot()}.  Any thread. */
+  SelectionSnapshot getSelectionSnapshot() {
+    return selectionSnapshot.get();
+  }
+
+  /**
+   * See {@link CalendarPickerView#compareAndSetSelection(SelectionSnapshot, Collection)}.  Any
+   * thread: the dates are checked against the rules {@code expected} was published with and the
+   * result is published here; the main thread then applies it to the views.
+   */
+  boolean compareAndSetSelection(SelectionSnapshot expected, Collection<Date> dates) {
+    SelectionSnapshot current = selectionSnapshot.get();
+    if (current == null) {
+      throw new IllegalStateException(
+              "Must be initialized before selecting.  Did you forget to call init()?");
+    }
+    if (expected != current || !selectionSnapshot.compareAndSet(expected, expected.next(dates))) {
+      return false;
+    }
+    mainHandler.post(pullSelection);
+    return true;
+  }
+
+  /**
+   * Applies what other threads changed between {@link #appliedSnapshot} and the published
+   * selection, if anything.  Main thread.
+   */
+  private void pullSelection() {
+    SelectionSnapshot current = selectionSnapshot.get();
+    if (current == appliedSnapshot) {
+      return;
+    }
+    EpochDaySet theirs = current.toDaySet();
+    EpochDaySet base = appliedSnapshot.toDaySet();
+    appliedSnapshot = current;
+    applySelectionDelta(theirs.runsNotIn(base), base.runsNotIn(theirs));
+  }
+
+  /**
+   * Applies a change made through {@link #compareAndSetSelection} on top of the selection as it is
+   * now, so that taps made in the meantime are kept.  Days that aren't selectable are dropped, and
+   * the result is published again.  Without such taps the result is the selection that was set.
+   */
+  private void applySelectionDelta(int[] added, int[] removed) {
+    EpochDaySet target = new EpochDaySet();
+    target.setTo(selectedDays);
+    for (int i = 0; i < removed.length; i += 2) {
+      target.removeRange(removed[i], removed[i + 1]);
+    }
+    int firstAdded = Integer.MAX_VALUE;
+    for (int i = 0; i < added.length; i += 2) {
+      firstAdded = Math.min(firstAdded, addSelectableDays(added[i], added[i + 1], target));
+    }
+    if (selectionMode == SelectionMode.SINGLE && target.size() > 1) {
+      target.clear();
+      target.add(firstAdded);
+    } else if (selectionMode == SelectionMode.RANGE && target.runCount() > 1) {
+      if (firstAdded == Integer.MAX_VALUE) {
+        // As in deselectDates: a range with a hole in it isn't a range any more.
+        target.clear();
+      } else {
+        target.addRange(target.min(), target.max() + 1);
+      }
+    }
+    applySelection(target, false, false);
+  }
+
+  /**
+   * Adds the selectable days of {@code [from, to)} to {@code days} in runs, a month's mask at a
+   * time, and returns the first one added, or {@link Integer#MAX_VALUE} if none is.
+   */
+  private int addSelectableDays(int from, int to, EpochDaySet days) {
+    from = Math.max(from, minDay);
+    to = Math.min(to, maxDay);
+    if (from >= to) {
+      return Integer.MAX_VALUE;
+    }
+    if (selectableFilter == null) {
+      days.addRange(from, to);
+      return from;
+    }
+    int firstAdded = Integer.MAX_VALUE;
+    while (from < to) {
+      int monthOrdinal = EpochDays.monthOrdinalOf(from);
+      int monthStart = EpochDays.firstDayOfMonth(monthOrdinal);
+      int monthEnd = Math.min(to, monthStart + EpochDays.daysInMonth(monthOrdinal));
+      ensureSelectableDays(monthOrdinal);
+      int mask = getSelectableDays(monthOrdinal);
+      int day = from;
+      while (day < monthEnd) {
+        if ((mask & 1 << day - monthStart) == 0) {
+          day++;
+          continue;
+        }
+        int runEnd = day + 1;
+        while (runEnd < monthEnd && (mask & 1 << runEnd - monthStart) != 0) {
+          runEnd++;
+        }
+        days.addRange(day, runEnd);
+        firstAdded = Math.min(firstAdded, day);
+        day = runEnd;
+      }
+      from = monthEnd;
+    }
+    return firstAdded;
+  }
+
+  /** Sends the difference between the selection and what the listener last saw, if any. */
+  private void dispatchSelectionDelta() {
+    if (selectionListener == null) {
+      return;
+    }
+    int[] added = selectedDays.runsNotIn(deliveredDays);
+    int[] removed = deliveredDays.runsNotIn(selectedDays);
+    if (added.length == 0 && removed.length == 0) {
+      return;
+    }
+    deliveredDays.setTo(selectedDays);
+    selectionListener.onSelectionChanged(new SelectionDelta(added, removed, timeZone));
+  }
+
+  void setOnInvalidDateSelectedListener(OnInvalidDateSelectedListener listener) {
+    invalidDateListener = listener;
+  }
+
+  void setOnSingleAndMutipleChoiceListener(OnSingleAndMutipleChoiceListener listener) {
+    choiceListener = listener;
+  }
+
+  void setDateSelectableFilter(DateSelectableFilter listener) {
+    setMonthSelectableFilter(listener == null ? null : new DateFilterAdapter(listener));
+  }
+
+  void setMonthSelectableFilter(MonthSelectableFilter filter) {
+    selectableFilter = filter;
+    selectableMasks.clear();
+    if (selectionSnapshot.get() != null) {
+      publishSelection();
+    }
+  }
+
+  void setCustomDayView(DayViewAdapter dayViewAdapter) {
+    this.dayViewAdapter = dayViewAdapter;
+    host.onMonthsChanged();
+  }
+
+  void setCellClickInterceptor(CellClickInterceptor listener) {
+    cellClickInterceptor = listener;
+  }
+
+  /** Answers {@link MonthSelectableFilter} by asking a {@link DateSelectableFilter} day by day. */
+  private class DateFilterAdapter implements MonthSelectableFilter {
+    private final DateSelectableFilter filter;
+
+    DateFilterAdapter(DateSelectableFilter filter) {
+      this.filter = filter;
+    }
+
+    @Override public int getSelectableDays(int year, int month) {
+      int first = EpochDays.of(year, month, 1);
+      int days = EpochDays.daysInMonth(year, month);
+      int mask = 0;
+      for (int d = 0; d < days; d++) {
+        if (filter.isDateSelectable(EpochDays.toDate(first + d, timeZone))) {
+          mask |= 1 << d;
+        }
+      }
+      return mask;
+    }
+  }
+
+  private class DefaultOnInvalidDateSelectedListener implements OnInvalidDateSelectedListener {
+    @Override public void onInvalidDateSelected(Date date) {
+      Context context = host.getContext();
+      String errMessage =
+              context.getResources().getString(R.string.invalid_date,
+                      fullDateFormat.format(EpochDays.toDate(minDay, timeZone)),
+                      fullDateFormat.format(EpochDays.toDate(maxDay - 1, timeZone)));
+      Toast.makeText(context, errMessage, Toast.LENGTH_SHORT).show();
+    }
+  }
+}
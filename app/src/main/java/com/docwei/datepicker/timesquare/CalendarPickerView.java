@@ -1,27 +1,20 @@
 package com.docwei.datepicker.timesquare;
 
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.res.Resources;
-import android.content.res.TypedArray;
-import android.graphics.Color;
 import android.graphics.Typeface;
+import android.os.Parcelable;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
-import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.ListView;
-import android.widget.Toast;
 
 import com.docwei.datepicker.R;
 
-import java.text.DateFormat;
-import java.text.DateFormatSymbols;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -29,15 +22,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.Executor;
 
-import static java.util.Calendar.DATE;
-import static java.util.Calendar.DAY_OF_MONTH;
-import static java.util.Calendar.DAY_OF_WEEK;
-import static java.util.Calendar.HOUR_OF_DAY;
-import static java.util.Calendar.MILLISECOND;
-import static java.util.Calendar.MINUTE;
-import static java.util.Calendar.MONTH;
-import static java.util.Calendar.SECOND;
 import static java.util.Calendar.YEAR;
 
 /**
@@ -65,91 +51,67 @@ public class CalendarPickerView extends ListView {
     RANGE
   }
 
+  private final CalendarPickerEngine engine;
   private final CalendarPickerView.MonthAdapter adapter;
-  private final IndexedLinkedHashMap<String, List<List<MonthCellDescriptor>>> cells =
-          new IndexedLinkedHashMap<>();
-  final MonthView.Listener listener = new CellClickedListener();
-  final List<MonthDescriptor> months = new ArrayList<>();
-  final List<MonthCellDescriptor> selectedCells = new ArrayList<>();
-  final List<Calendar> selectedCals = new ArrayList<>();
-  private Locale locale;
-  private TimeZone timeZone;
-  private DateFormat monthNameFormat;
-  private DateFormat weekdayNameFormat;
-  private DateFormat fullDateFormat;
-  private Calendar minCal;
-  private Calendar maxCal;
-  private Calendar monthCounter;
-  private boolean displayOnly;
-  SelectionMode selectionMode;
-  Calendar today;
-  private int dividerColor;
-  private int dayBackgroundResId;
-  private int dayTextColorResId;
-  private int titleTextColor;
-  private boolean displayHeader;
-  private int headerTextColor;
-  private Typeface titleTypeface;
-  private Typeface dateTypeface;
-  private List<MonthCellDescriptor> mCells=new ArrayList<>();
-  private OnDateSelectedListener dateListener;
-  private DateSelectableFilter dateConfiguredListener;
-  private OnInvalidDateSelectedListener invalidDateListener =
-          new DefaultOnInvalidDateSelectedListener();
-  private CellClickInterceptor cellClickInterceptor;
-  private List<CalendarCellDecorator> decorators;
-  private DayViewAdapter dayViewAdapter = new DefaultDayViewAdapter();
+  private ScrollJankMonitor jankMonitor;
+  /** The app's scroll listener; the picker keeps the list's own slot to watch for scrolls. */
+  private OnScrollListener clientScrollListener;
+  private boolean scrolling;
 
   public void setDecorators(List<CalendarCellDecorator> decorators) {
-    this.decorators = decorators;
-    if (null != adapter) {
-      adapter.notifyDataSetChanged();
-    }
+    engine.setDecorators(decorators);
   }
 
   public List<CalendarCellDecorator> getDecorators() {
-    return decorators;
+    return engine.getDecorators();
+  }
+
+  /**
+   * Sets decorators that decorate a month at a time.  Each month is decorated once and the results
+   * are kept; a decorator only runs again for the dates it invalidates through its
+   * {@link CalendarMonthDecorator.InvalidationListener}, and then only the cells whose decorations
+   * changed are rebound.  They are applied after the {@link #setDecorators(List) cell decorators}.
+   * Decorators that are removed are called with 0 for every cell they decorated, to undo it.
+   */
+  public void setMonthDecorators(List<CalendarMonthDecorator> decorators) {
+    engine.setMonthDecorators(decorators);
+  }
+
+  public List<CalendarMonthDecorator> getMonthDecorators() {
+    return engine.getMonthDecorators();
   }
 
   public CalendarPickerView(Context context, AttributeSet attrs) {
     super(context, attrs);
 
-    Resources res = context.getResources();
-    TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CalendarPickerView);
-    final int bg = a.getColor(R.styleable.CalendarPickerView_android_background,
-            res.getColor(R.color.calendar_bg));
-    dividerColor = a.getColor(R.styleable.CalendarPickerView_tsquare_dividerColor,
-            res.getColor(R.color.calendar_divider));
-    dayBackgroundResId = a.getResourceId(R.styleable.CalendarPickerView_tsquare_dayBackground,
-            R.drawable.calendar_bg_selector);
-    dayTextColorResId = a.getResourceId(R.styleable.CalendarPickerView_tsquare_dayTextColor,
-            R.color.calendar_text_selector);
-    titleTextColor = a.getColor(R.styleable.CalendarPickerView_tsquare_titleTextColor,Color.WHITE);
-    displayHeader = a.getBoolean(R.styleable.CalendarPickerView_tsquare_displayHeader, false);
-    headerTextColor = a.getColor(R.styleable.CalendarPickerView_tsquare_headerTextColor,
-            res.getColor(R.color.calendar_text_active));
-    a.recycle();
-
     adapter = new MonthAdapter();
+    engine = new CalendarPickerEngine(new ListHost());
+    final int bg = engine.loadStyle(context, attrs);
     setDivider(null);
     setDividerHeight(0);
     setBackgroundColor(bg);
     setCacheColorHint(bg);
-    timeZone = TimeZone.getDefault();
-    locale = Locale.getDefault();
-    today = Calendar.getInstance(timeZone, locale);
-    minCal = Calendar.getInstance(timeZone, locale);
-    maxCal = Calendar.getInstance(timeZone, locale);
-    monthCounter = Calendar.getInstance(timeZone, locale);
-    monthNameFormat = new SimpleDateFormat(context.getString(R.string.month_name_format), locale);
-    monthNameFormat.setTimeZone(timeZone);
-    weekdayNameFormat = new SimpleDateFormat(context.getString(R.string.day_name_format), locale);
-    weekdayNameFormat.setTimeZone(timeZone);
-    fullDateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
-    fullDateFormat.setTimeZone(timeZone);
+    super.setOnScrollListener(new OnScrollListener() {
+      @Override public void onScrollStateChanged(AbsListView view, int scrollState) {
+        scrolling = scrollState != SCROLL_STATE_IDLE;
+        if (jankMonitor != null) {
+          jankMonitor.onScrollStateChanged(scrolling);
+        }
+        if (clientScrollListener != null) {
+          clientScrollListener.onScrollStateChanged(view, scrollState);
+        }
+      }
+
+      @Override public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+          int totalItemCount) {
+        if (clientScrollListener != null) {
+          clientScrollListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+      }
+    });
 
     if (isInEditMode()) {
-      Calendar nextYear = Calendar.getInstance(timeZone, locale);
+      Calendar nextYear = Calendar.getInstance(engine.getTimeZone(), engine.getLocale());
       nextYear.add(YEAR, 1);
 
       init(new Date(), nextYear.getTime()) //
@@ -158,81 +120,45 @@ public class CalendarPickerView extends ListView {
   }
 
   public FluentInitializer init(Date minDate, Date maxDate, TimeZone timeZone, Locale locale) {
-    if (minDate == null || maxDate == null) {
-      throw new IllegalArgumentException(
-              "minDate and maxDate must be non-null.  " + dbg(minDate, maxDate));
-    }
-    if (minDate.after(maxDate)) {
-      throw new IllegalArgumentException(
-              "minDate must be before maxDate.  " + dbg(minDate, maxDate));
-    }
-    if (locale == null) {
-      throw new IllegalArgumentException("Locale is null.");
-    }
-    if (timeZone == null) {
-      throw new IllegalArgumentException("Time zone is null.");
-    }
+    engine.init(minDate, maxDate, timeZone, locale);
+    return new FluentInitializer(engine);
+  }
 
-    // Make sure that all calendar instances use the same time zone and locale.
-    this.timeZone = timeZone;
-    this.locale = locale;
-    today = Calendar.getInstance(timeZone, locale);
-    minCal = Calendar.getInstance(timeZone, locale);
-    maxCal = Calendar.getInstance(timeZone, locale);
-    monthCounter = Calendar.getInstance(timeZone, locale);
-    monthNameFormat =
-            new SimpleDateFormat(getContext().getString(R.string.month_name_format), locale);
-    monthNameFormat.setTimeZone(timeZone);
-    for (MonthDescriptor month : months) {
-         month.setLabel(monthNameFormat.format(month.getDate()));
+  /**
+   * Initializes an open-ended calendar starting around {@code date}.  Instead of a fixed range,
+   * months are generated as the user scrolls toward either end; only a window of
+   * {@value CalendarPickerEngine#WINDOW_MONTHS} months is kept in the adapter, so memory doesn't
+   * grow with the distance scrolled.  Every date from year 1 to year 9999 can be shown and
+   * selected; before October 1582 the days and month titles follow the proleptic Gregorian
+   * calendar, not the Julian one.
+   */
+  public FluentInitializer initOpenEnded(Date date, TimeZone timeZone, Locale locale) {
+    engine.initOpenEnded(date, timeZone, locale);
+    return new FluentInitializer(engine);
+  }
 
-    }
-    weekdayNameFormat =
-            new SimpleDateFormat(getContext().getString(R.string.day_name_format), locale);
-    weekdayNameFormat.setTimeZone(timeZone);
-    fullDateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
-    fullDateFormat.setTimeZone(timeZone);
-
-    this.selectionMode = SelectionMode.SINGLE;
-    // Clear out any previously-selected dates/cells.
-    selectedCals.clear();
-    selectedCells.clear();
-
-
-    // Clear previous state.
-    cells.clear();
-    months.clear();
-    minCal.setTime(minDate);
-    maxCal.setTime(maxDate);
-    setMidnight(minCal);
-    setMidnight(maxCal);
-    displayOnly = false;
-
-    // maxDate is exclusive: bump back to the previous day so if maxDate is the first of a month,
-    // we don't accidentally include that month in the view.
-    maxCal.add(MINUTE, -1);
-
-    // Now iterate between minCal and maxCal and build up our list of months to show.
-    monthCounter.setTime(minCal.getTime());
-    final int maxMonth = maxCal.get(MONTH);
-    final int maxYear = maxCal.get(YEAR);
-    //把近两年的日期全部加入集合
-    while ((monthCounter.get(MONTH) <= maxMonth // Up to, including the month.
-            || monthCounter.get(YEAR) < maxYear) // Up to the year.
-            && monthCounter.get(YEAR) < maxYear + 1) { // But not > next yr.
-      Date date = monthCounter.getTime();
-      MonthDescriptor month =
-              new MonthDescriptor(monthCounter.get(MONTH), monthCounter.get(YEAR), date,
-                      monthNameFormat.format(date));
-      cells.put(monthKey(month), getMonthCells(month, monthCounter));
-      Logr.d("Adding month %s", month);
-      months.add(month);
-      monthCounter.add(MONTH, 1);
-    }
+  public FluentInitializer initOpenEnded(Date date) {
+    return initOpenEnded(date, TimeZone.getDefault(), Locale.getDefault());
+  }
 
-    validateAndUpdate();
-    return new FluentInitializer();
+  @Override protected Parcelable onSaveInstanceState() {
+    return engine.saveState(super.onSaveInstanceState());
   }
+
+  /**
+   * Restores the range, mode, selection and scroll position without the host calling
+   * {@code init} again.
+   */
+  @Override protected void onRestoreInstanceState(Parcelable state) {
+    if (!(state instanceof CalendarPickerEngine.SavedState)) {
+      super.onRestoreInstanceState(state);
+      return;
+    }
+    CalendarPickerEngine.SavedState ss = (CalendarPickerEngine.SavedState) state;
+    super.onRestoreInstanceState(ss.getSuperState());
+    engine.restoreState(ss);
+  }
+
   public FluentInitializer init(Date minDate, Date maxDate) {
     return init(minDate, maxDate, TimeZone.getDefault(), Locale.getDefault());
   }
@@ -242,11 +168,20 @@ public class CalendarPickerView extends ListView {
     return init(minDate, maxDate, TimeZone.getDefault(), locale);
   }
 
-  public class FluentInitializer {
+  /**
+   * Returned by the init methods of {@link CalendarPickerView} and {@link CalendarRecyclerView}
+   * to configure the picker further.
+   */
+  public static class FluentInitializer {
+    private final CalendarPickerEngine engine;
+
+    FluentInitializer(CalendarPickerEngine engine) {
+      this.engine = engine;
+    }
+
     /** Override the {@link SelectionMode} from the default ({@link SelectionMode#SINGLE}). */
     public FluentInitializer inMode(SelectionMode mode) {
-      selectionMode = mode;
-      validateAndUpdate();
+      engine.setSelectionMode(mode);
       return this;
     }
 
@@ -263,37 +198,17 @@ public class CalendarPickerView extends ListView {
      * pass in multiple dates and haven't already called {@link #inMode(SelectionMode)}.
      */
     public FluentInitializer withSelectedDates(Collection<Date> selectedDates) {
-      if (selectionMode == SelectionMode.SINGLE && selectedDates.size() > 1) {
-        throw new IllegalArgumentException("SINGLE mode can't be used with multiple selectedDates");
-      }
-      if (selectionMode == SelectionMode.RANGE && selectedDates.size() > 2) {
-        throw new IllegalArgumentException(
-                "RANGE mode only allows two selectedDates.  You tried to pass " + selectedDates.size());
-      }
-      //我们使用双选的话，选择的日期最多也是0-2；
-
-      if (selectedDates != null) {
-        for (Date date : selectedDates) {
-          selectDate(date,false);
-        }
-      }
-      scrollToSelectedDates();
-
-      validateAndUpdate();
+      engine.setSelectedDates(selectedDates);
       return this;
     }
 
-    @SuppressLint("SimpleDateFormat")
     public FluentInitializer setShortWeekdays(String[] newShortWeekdays) {
-      DateFormatSymbols symbols = new DateFormatSymbols(locale);
-      symbols.setShortWeekdays(newShortWeekdays);
-      weekdayNameFormat =
-              new SimpleDateFormat(getContext().getString(R.string.day_name_format), symbols);
+      engine.setShortWeekdays(newShortWeekdays);
       return this;
     }
 
     public FluentInitializer displayOnly() {
-      displayOnly = true;
+      engine.setDisplayOnly();
       return this;
     }
   }
@@ -305,66 +220,8 @@ public class CalendarPickerView extends ListView {
     adapter.notifyDataSetChanged();
   }
 
-  private void scrollToSelectedMonth(final int selectedIndex) {
-    scrollToSelectedMonth(selectedIndex, false);
-  }
-
-  private void scrollToSelectedMonth(final int selectedIndex, final boolean smoothScroll) {
-    post(new Runnable() {
-      @Override public void run() {
-        Logr.d("Scrolling to position %d", selectedIndex);
-
-        if (smoothScroll) {
-          smoothScrollToPosition(selectedIndex);
-        } else {
-          setSelection(selectedIndex);
-        }
-      }
-    });
-  }
-  /* 滚到选择的日期*/
-  private void scrollToSelectedDates() {
-    Integer selectedIndex = null;
-    Integer todayIndex = null;
-    Calendar today = Calendar.getInstance(timeZone, locale);
-    for (int c = 0; c < months.size(); c++) {
-      MonthDescriptor month = months.get(c);
-      if (selectedIndex == null) {
-        for (Calendar selectedCal : selectedCals) {
-          if (sameMonth(selectedCal, month)) {
-            selectedIndex = c;
-            break;
-          }
-        }
-        if (selectedIndex == null && todayIndex == null && sameMonth(today, month)) {
-          todayIndex = c;
-        }
-      }
-    }
-    if (selectedIndex != null) {
-      scrollToSelectedMonth(selectedIndex);
-    } else if (todayIndex != null) {
-      scrollToSelectedMonth(todayIndex);
-    }
-  }
-
   public boolean scrollToDate(Date date) {
-    Integer selectedIndex = null;
-
-    Calendar cal = Calendar.getInstance(timeZone, locale);
-    cal.setTime(date);
-    for (int c = 0; c < months.size(); c++) {
-      MonthDescriptor month = months.get(c);
-      if (sameMonth(cal, month)) {
-        selectedIndex = c;
-        break;
-      }
-    }
-    if (selectedIndex != null) {
-      scrollToSelectedMonth(selectedIndex);
-      return true;
-    }
-    return false;
+    return engine.scrollToDate(date);
   }
 
   /**
@@ -382,7 +239,7 @@ public class CalendarPickerView extends ListView {
     post(new Runnable() {
       @Override public void run() {
         Logr.d("Dimens are fixed: now scroll to the selected date");
-        scrollToSelectedDates();
+        engine.scrollToSelectedDates();
       }
     });
   }
@@ -391,16 +248,14 @@ public class CalendarPickerView extends ListView {
    * Set the typeface to be used for month titles.
    */
   public void setTitleTypeface(Typeface titleTypeface) {
-    this.titleTypeface = titleTypeface;
-    validateAndUpdate();
+    engine.setTitleTypeface(titleTypeface);
   }
 
   /**
    * Sets the typeface to be used within the date grid.
    */
   public void setDateTypeface(Typeface dateTypeface) {
-    this.dateTypeface = dateTypeface;
-    validateAndUpdate();
+    engine.setDateTypeface(dateTypeface);
   }
 
   /**
@@ -424,304 +279,84 @@ public class CalendarPickerView extends ListView {
   }
 
   @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-    if (months.isEmpty()) {
-      throw new IllegalStateException(
-              "Must have at least one month to display.  Did you forget to call init()?");
-    }
+    engine.checkInitialized();
     super.onMeasure(widthMeasureSpec, heightMeasureSpec);
   }
 
   public Date getSelectedDate() {
-    return (selectedCals.size() > 0 ? selectedCals.get(0).getTime() : null);
-  }
-
-
-
-  /** Returns a string summarizing what the client sent us for init() params. */
-  private static String dbg(Date minDate, Date maxDate) {
-    return "minDate: " + minDate + "\nmaxDate: " + maxDate;
-  }
-
-  /** Clears out the hours/minutes/seconds/millis of a Calendar. */
-  static void setMidnight(Calendar cal) {
-    cal.set(HOUR_OF_DAY, 0);
-    cal.set(MINUTE, 0);
-    cal.set(SECOND, 0);
-    cal.set(MILLISECOND, 0);
-  }
-
-  private class CellClickedListener implements MonthView.Listener {
-    @Override public void handleClick(MonthCellDescriptor cell) {
-      if(selectionMode==SelectionMode.SINGLE){
-        //什么都不用做
-      }else if(selectionMode==SelectionMode.MULTIPLE){
-        mutipleChoice(cell);
-      }
-
-      //后面会加进去的
-      Date clickedDate = cell.getDate();
-
-      if (cellClickInterceptor != null && cellClickInterceptor.onCellClicked(clickedDate)) {
-        return;
-      }
-
-      if (!betweenDates(clickedDate, minCal, maxCal) || !isDateSelectable(clickedDate)) {
-        if (invalidDateListener != null) {
-          invalidDateListener.onInvalidDateSelected(clickedDate);
-        }
-      } else {
-        boolean wasSelected = doSelectDate(clickedDate, cell);
-        if(mOnSingleAndMutipleChoiceListener!=null){
-          if(wasSelected){
-            //区分单选和双选
-            switch (selectionMode){
-              case SINGLE:
-                mOnSingleAndMutipleChoiceListener.onSingleChoice(clickedDate);
-                break;
-              case MULTIPLE:
-              if(selectedCells.size()==2){
-                mOnSingleAndMutipleChoiceListener.onMutipleChoice(selectedCells.get(0).getDate(), selectedCells.get(1).getDate());
-              }
-                break;
-            }
-
-            validateAndUpdate();
-          }
-        }
-
-        if (dateListener != null) {
-          if (wasSelected) {
-            dateListener.onDateSelected(clickedDate);
-          } else {
-            dateListener.onDateUnselected(clickedDate);
-          }
-        }
-      }
-    }
-  }
-  public void mutipleChoice(MonthCellDescriptor cell) {
-    if (selectedCells.size() == 0) {
-      cell.setEnd(false);
-      cell.setSelected(true);
-      cell.setStart(true);
-    } else if (selectedCells.size() == 1) {
-      //如果之前已经有一个值了，那么就需要判断这个已选的日期跟现在的选择的日期是否匹配
-      boolean notMatch = selectedCells.get(0).getDate().before(cell.getDate());
-      if (notMatch) {
-        cell.setStart(false);
-        cell.setSelected(true);
-        cell.setEnd(true);
-      } else {
-        setCellValue();
-        cell.setEnd(false);
-        cell.setSelected(true);
-        cell.setStart(true);
-      }
-    } else if (selectedCells.size() == 2) {
-      setCellValue();
-
-      cell.setEnd(false);
-      cell.setSelected(true);
-      cell.setStart(true);
-    }
+    return engine.getSelectedDate();
   }
 
-
-  private boolean goTomatchSelected(MonthCellDescriptor nextCell) {
-    MonthCellDescriptor cell=selectedCells.get(0);
-    return cell.getDate().before(nextCell.getDate());
-  }
-
-  private void setCellValue() {
-    for(MonthCellDescriptor cell :selectedCells){
-      cell.setStart(false);
-      cell.setEnd(false);
-      cell.setSelected(false);
-    }
-    selectedCells.clear();
-  }
-
-
   public boolean selectDate(Date date) {
     return selectDate(date, false);
   }
 
 
   public boolean selectDate(Date date, boolean smoothScroll) {
-    validateDate(date);
-
-    MonthCellWithMonthIndex monthCellWithMonthIndex = getMonthCellWithIndexByDate(date);
-    if (monthCellWithMonthIndex == null || !isDateSelectable(date)) {
-      return false;
-    }
-    boolean wasSelected = doSelectDate(date, monthCellWithMonthIndex.cell);
-    if (wasSelected) {
-      scrollToSelectedMonth(monthCellWithMonthIndex.monthIndex, smoothScroll);
-    }
-    return wasSelected;
+    return engine.selectDate(date, smoothScroll);
   }
 
-  private int getDateKey(Calendar calendar) {
-    int date=calendar.get(DATE);
-    calendar.set(DATE,1);
-    return calendar.get(DAY_OF_WEEK)-1+date;
-  }
-
-  private int getDiffValue(Calendar minCal, Calendar calendar) {
-    int value=0;
-    int minYear=minCal.get(YEAR);
-    int minMonth=minCal.get(MONTH);
-    int currentYear=calendar.get(YEAR);
-    int currentMonth=calendar.get(MONTH);
-
-    if(minYear==currentYear){
-      value=currentMonth-minMonth;
-    }else{
-      value=12*(currentYear-minYear)+(currentMonth-minMonth);
-    }
-    return value;
-  }
-
-  //合法化数据
-  private void validateDate(Date date) {
-    if (date == null) {
-      throw new IllegalArgumentException("Selected date must be non-null.");
-    }
-    if (date.before(minCal.getTime()) || date.after(maxCal.getTime())) {
-      throw new IllegalArgumentException(String.format(
-              "SelectedDate must be between minDate and maxDate."
-                      + "%nminDate: %s%nmaxDate: %s%nselectedDate: %s", minCal.getTime(), maxCal.getTime(),
-              date));
-    }
+  /**
+   * Returns the current selection.  Unlike the other methods, this may be called from any thread:
+   * a new immutable snapshot is published on every change, so the result is always consistent.
+   */
+  public SelectionSnapshot getSelectionSnapshot() {
+    return engine.getSelectionSnapshot();
   }
-   //做选择日期的事件
-  private boolean doSelectDate(Date date, MonthCellDescriptor cell) {
-    Calendar newlySelectedCal = Calendar.getInstance(timeZone, locale);
-
-    newlySelectedCal.setTime(date);
-    // Sanitize input: clear out the hours/minutes/seconds/millis.
-    setMidnight(newlySelectedCal);
 
-
-    switch (selectionMode) {
-      case SINGLE:
-        clearOldSelections();
-        if(date!=null){
-          cell.setSelected(true);
-          selectedCells.add(cell);
-          selectedCals.add(newlySelectedCal);
-        }
-        break;
-      case MULTIPLE:
-      /*  date = applyMultiSelect(date, newlySelectedCal);*/
-        if (date != null) {
-          // Select a new cell.
-          if (selectedCells.size() == 0) {
-            cell.setSelected(true);
-            cell.setStart(true);
-            selectedCells.add(cell);
-          }else if(selectedCells.size() == 1){
-            cell.setSelected(true);
-            cell.setEnd(true);
-            selectedCells.add(cell);
-          }
-          selectedCals.add(newlySelectedCal);
-        }
-        break;
-      default:
-        throw new IllegalStateException("Unknown selectionMode " + selectionMode);
-    }
-
-
-    // Update the adapter.
-    validateAndUpdate();
-    return date != null;
+  /**
+   * Replaces the selection with {@code dates} if it is still {@code expected}, from any thread.
+   * The dates are checked as by {@link #setSelection(Collection)}, under the mode, range and
+   * filter the picker had when it published {@code expected}; the filter is asked on the calling
+   * thread.  The new selection is published at once, so {@link #getSelectionSnapshot()} returns it
+   * and a concurrent update based on {@code expected} fails; the views follow on the main thread.
+   * Selection changes made there before they do are merged with it rather than overwriting it.
+   * Returns false, changing nothing, if the selection was no longer {@code expected}: read a new
+   * snapshot and try again.
+   *
+   * @throws IllegalStateException if {@link #init} hasn't been called
+   */
+  public boolean compareAndSetSelection(SelectionSnapshot expected, Collection<Date> dates) {
+    return engine.compareAndSetSelection(expected, dates);
   }
 
-  private String monthKey(Calendar cal) {
-    return cal.get(YEAR) + "-" + cal.get(MONTH);
+  public List<Date> getSelectedDates() {
+    return engine.getSelectedDates();
   }
 
-  private String monthKey(MonthDescriptor month) {
-    return month.getYear() + "-" + month.getMonth();
+  public int selectDates(Collection<Date> dates) {
+    return selectDates(dates, false);
   }
-  //清楚旧的选择
-  private void clearOldSelections() {
-    for (MonthCellDescriptor selectedCell : selectedCells) {
-      // De-select the currently-selected cell.
-      selectedCell.setSelected(false);
-
-      if (dateListener != null) {
-        Date selectedDate = selectedCell.getDate();
-         dateListener.onDateUnselected(selectedDate);
-      }
-    }
-    selectedCells.clear();
-    selectedCals.clear();
-  }
-
-  private Date applyMultiSelect(Date date, Calendar selectedCal) {
-    /*  选择日期去重*/
-      for (MonthCellDescriptor selectedCell : selectedCells) {
-        if (selectedCell.getDate().equals(date)) {
-          // De-select the currently-selected cell.
-          selectedCell.setSelected(false);
-          selectedCells.remove(selectedCell);
-          date = null;
-          break;
-        }
-      }
-
-      for (Calendar cal : selectedCals) {
-        if (sameDate(cal, selectedCal)) {
-          selectedCals.remove(cal);
-          break;
-        }
-      }
 
-    return date;
+  /**
+   * Selects a batch of dates: they are all validated first, then applied in one pass with one
+   * rebind of the changed cells, and the calendar scrolls at most once, to the earliest newly
+   * selected date.  In MULTIPLE mode the dates are added to the selection; in SINGLE mode (one
+   * date) and RANGE mode (up to two dates, the range's ends) they replace it.  Dates that aren't
+   * selectable are skipped.  Returns the number of newly selected days.
+   */
+  public int selectDates(Collection<Date> dates, boolean smoothScroll) {
+    return engine.selectDates(dates, smoothScroll);
   }
 
-
-
-
-  /** Hold a cell with a month-index. */
-  private static class MonthCellWithMonthIndex {
-    public MonthCellDescriptor cell;
-    public int monthIndex;
-
-    public MonthCellWithMonthIndex(MonthCellDescriptor cell, int monthIndex) {
-      this.cell = cell;
-      this.monthIndex = monthIndex;
-    }
+  /**
+   * Unselects a batch of dates in one pass, returning how many were selected.  In RANGE mode
+   * unselecting any day of the range clears the whole range.
+   */
+  public int deselectDates(Collection<Date> dates) {
+    return engine.deselectDates(dates);
   }
 
-  /** Return cell and month-index (for scrolling) for a given Date. */
-  private MonthCellWithMonthIndex getMonthCellWithIndexByDate(Date date) {
-    Calendar searchCal = Calendar.getInstance(timeZone, locale);
-    searchCal.setTime(date);
-    String monthKey = monthKey(searchCal);
-    Calendar actCal = Calendar.getInstance(timeZone, locale);
-
-    int index = cells.getIndexOfKey(monthKey);
-    List<List<MonthCellDescriptor>> monthCells = cells.get(monthKey);
-    for (List<MonthCellDescriptor> weekCells : monthCells) {
-      for (MonthCellDescriptor actCell : weekCells) {
-        actCal.setTime(actCell.getDate());
-        if (sameDate(actCal, searchCal) && actCell.isSelectable()) {
-          return new MonthCellWithMonthIndex(actCell, index);
-        }
-      }
-    }
-    return null;
+  /**
+   * Replaces the selection with {@code dates}, as {@link #selectDates(Collection, boolean)} does
+   * but dropping the dates that aren't in the batch.
+   */
+  public void setSelection(Collection<Date> dates) {
+    engine.setSelection(dates, false);
   }
 
   private class MonthAdapter extends BaseAdapter {
     private final LayoutInflater inflater;
-    private SparseArray<MonthView> mSparseIntArray=new SparseArray<MonthView>();
-    public MonthView getPositionView(int position){
-      return mSparseIntArray.get(position);
-    }
     private MonthAdapter() {
       inflater = LayoutInflater.from(getContext());
     }
@@ -732,132 +367,169 @@ public class CalendarPickerView extends ListView {
     }
 
     @Override public int getCount() {
-      return months.size();
+      return engine.months.size();
     }
 
     @Override public Object getItem(int position) {
-      return months.get(position);
+      return engine.months.get(position);
     }
 
     @Override public long getItemId(int position) {
-      return position;
+      return engine.monthOrdinalAt(position);
     }
 
     @Override public View getView(int position, View convertView, ViewGroup parent) {
-      MonthView monthView = (MonthView) convertView;
+      View monthView = convertView;
+      DayViewAdapter dayViewAdapter = engine.getDayViewAdapter();
       if (monthView == null //
-              || !monthView.getTag(R.id.day_view_adapter_class).equals(dayViewAdapter.getClass())) {
-        monthView =
-                MonthView.create(parent, inflater, weekdayNameFormat, listener, today, dividerColor,
-                        dayBackgroundResId, dayTextColorResId, titleTextColor, displayHeader,
-                        headerTextColor, decorators, locale, dayViewAdapter);
+              || !monthView.getTag(R.id.day_view_adapter_class).equals(dayViewAdapter.getClass())
+              || monthView instanceof MonthCanvasView != engine.isCanvasMonths()) {
+        monthView = engine.createMonthView(parent, inflater);
         monthView.setTag(R.id.day_view_adapter_class, dayViewAdapter.getClass());
-      } else {
-        monthView.setDecorators(decorators);
       }
-      monthView.init(months.get(position), cells.getValueAtIndex(position), displayOnly,
-              titleTypeface, dateTypeface);
-      mSparseIntArray.append(position,monthView);
+      engine.bindMonthView((MonthRenderer) monthView, position);
       return monthView;
     }
   }
 
-  List<List<MonthCellDescriptor>> getMonthCells(MonthDescriptor month, Calendar startCal) {
-    Calendar cal = Calendar.getInstance(timeZone, locale);
-    cal.setTime(startCal.getTime());
-    List<List<MonthCellDescriptor>> cells = new ArrayList<>();
-    cal.set(DAY_OF_MONTH, 1);
-    int firstDayOfWeek = cal.get(DAY_OF_WEEK);
-    int offset = cal.getFirstDayOfWeek() - firstDayOfWeek;
-    if (offset > 0) {
-      offset -= 7;
+  /** Drives this ListView for the {@link CalendarPickerEngine}. */
+  private class ListHost implements CalendarPickerEngine.Host {
+    @Override public Context getContext() {
+      return CalendarPickerView.this.getContext();
     }
-    cal.add(DATE, offset);
-
-    Calendar minSelectedCal = minDate(selectedCals);
-    Calendar maxSelectedCal = maxDate(selectedCals);
-
-    while ((cal.get(MONTH) < month.getMonth() + 1 || cal.get(YEAR) < month.getYear()) //
-            && cal.get(YEAR) <= month.getYear()) {
-      Logr.d("Building week row starting at %s", cal.getTime());
-      List<MonthCellDescriptor> weekCells = new ArrayList<>();
-      cells.add(weekCells);
-      for (int c = 0; c < 7; c++) {
-        Date date = cal.getTime();
-        boolean isCurrentMonth = cal.get(MONTH) == month.getMonth();
-        boolean isSelected = isCurrentMonth && containsDate(selectedCals, cal);
-        boolean isSelectable =
-                isCurrentMonth && betweenDates(cal, minCal, maxCal) && isDateSelectable(date);
-        boolean isToday = sameDate(cal, today);
-        int value = cal.get(DAY_OF_MONTH);
-        //走这里的时候，我的初始设置的日期还没有走到这里啊
-        weekCells.add(
-                new MonthCellDescriptor(date, isCurrentMonth, isSelectable, isSelected, isToday,false
-                        ,false,false,value, null));
-        cal.add(DATE, 1);
-      }
+
+    @Override public boolean post(Runnable action) {
+      return CalendarPickerView.this.post(action);
     }
-    return cells;
-  }
 
-  private boolean containsDate(List<Calendar> selectedCals, Date date) {
-    Calendar cal = Calendar.getInstance(timeZone, locale);
-    cal.setTime(date);
-    return containsDate(selectedCals, cal);
-  }
+    @Override public void postOnAnimation(Runnable action) {
+      ViewCompat.postOnAnimation(CalendarPickerView.this, action);
+    }
+
+    @Override public void onMonthsChanged() {
+      validateAndUpdate();
+    }
+
+    @Override public void onMonthsInserted(int position, int count) {
+      // A ListView adapter can only say that everything changed; showMonth restores the position.
+      adapter.notifyDataSetChanged();
+    }
+
+    @Override public void onMonthsRemoved(int position, int count) {
+      adapter.notifyDataSetChanged();
+    }
 
-  private static boolean containsDate(List<Calendar> selectedCals, Calendar cal) {
-    for (Calendar selectedCal : selectedCals) {
-      if (sameDate(cal, selectedCal)) {
-        return true;
+    /**
+     * Rebinds the cells whose flags changed in the months on screen.  The list's children are the
+     * bound month views, so they are exactly the months that need updating.  Falls back to a full
+     * rebind if a visible month's model has been evicted and replaced in the cache.
+     */
+    @Override public void onCellsChanged() {
+      for (int i = 0; i < getChildCount(); i++) {
+        View child = getChildAt(i);
+        if (child instanceof MonthRenderer) {
+          MonthRenderer monthView = (MonthRenderer) child;
+          if (!engine.isCurrent(monthView)) {
+            adapter.notifyDataSetChanged();
+            return;
+          }
+          monthView.rebindChangedCells();
+        }
       }
     }
-    return false;
-  }
 
-  private static Calendar minDate(List<Calendar> selectedCals) {
-    if (selectedCals == null || selectedCals.size() == 0) {
-      return null;
+    @Override public int getFirstVisibleMonth() {
+      return getChildCount() == 0 ? -1 : getFirstVisiblePosition();
+    }
+
+    @Override public int getLastVisibleMonth() {
+      return getChildCount() == 0 ? -1 : getLastVisiblePosition();
+    }
+
+    @Override public int getFirstVisibleTop() {
+      View top = getChildAt(0);
+      return top == null ? 0 : top.getTop();
     }
-    Collections.sort(selectedCals);
-    return selectedCals.get(0);
-  }
 
-  private static Calendar maxDate(List<Calendar> selectedCals) {
-    if (selectedCals == null || selectedCals.size() == 0) {
-      return null;
+    @Override public void showMonth(int position, int top) {
+      setSelectionFromTop(position, top);
+    }
+
+    @Override public void smoothScrollToMonth(int position) {
+      smoothScrollToPosition(position);
     }
-    Collections.sort(selectedCals);
-    return selectedCals.get(selectedCals.size() - 1);
   }
 
-  private static boolean sameDate(Calendar cal, Calendar selectedDate) {
-    return cal.get(MONTH) == selectedDate.get(MONTH)
-            && cal.get(YEAR) == selectedDate.get(YEAR)
-            && cal.get(DAY_OF_MONTH) == selectedDate.get(DAY_OF_MONTH);
+  /**
+   * Set an executor used to ask the selectable filter and format the month labels off the main
+   * thread.  With an executor, {@code init} returns without calling the filter: months are loaded
+   * outward from the selected month (or today) and appear progressively, and months that haven't
+   * been loaded yet are shown as not selectable.  The filter must then be safe to call from the
+   * executor's threads.
+   * <p>
+   * Important: set this before you call {@link #init(Date, Date)} methods.
+   */
+  public void setBackgroundExecutor(Executor executor) {
+    engine.setBackgroundExecutor(executor);
   }
 
-  private static boolean betweenDates(Calendar cal, Calendar minCal, Calendar maxCal) {
-    final Date date = cal.getTime();
-    return betweenDates(date, minCal, maxCal);
+  /**
+   * Forgets the answers of the selectable filter so it is asked again, e.g. after the data behind
+   * it changed.  Months on screen are rebuilt.
+   */
+  public void invalidateSelectableDates() {
+    engine.invalidateSelectableDates();
   }
 
-  static boolean betweenDates(Date date, Calendar minCal, Calendar maxCal) {
-    final Date min = minCal.getTime();
-    return (date.equals(min) || date.after(min)) // >= minCal
-            && date.before(maxCal.getTime()); // && < maxCal
+  /**
+   * Like {@link #invalidateSelectableDates()}, but only for the months from the one containing
+   * {@code from} to the one containing {@code to}.
+   */
+  public void invalidateSelectableDates(Date from, Date to) {
+    engine.invalidateSelectableDates(from, to);
   }
 
-  private static boolean sameMonth(Calendar cal, MonthDescriptor month) {
-    return (cal.get(MONTH) == month.getMonth() && cal.get(YEAR) == month.getYear());
+  @Override public void setOnScrollListener(OnScrollListener listener) {
+    clientScrollListener = listener;
   }
 
-  private boolean isDateSelectable(Date date) {
-    return dateConfiguredListener == null || dateConfiguredListener.isDateSelectable(date);
+  /**
+   * Watches the frames drawn while the calendar scrolls and reports, per scroll, how many took too
+   * long and how the picker's time was split between inflating, binding, decorating, measuring
+   * and laying out months.  Null stops monitoring.
+   */
+  public void setScrollJankMonitor(ScrollJankMonitor monitor) {
+    if (jankMonitor != null) {
+      jankMonitor.onScrollStateChanged(false);
+    }
+    jankMonitor = monitor;
+    if (monitor != null) {
+      monitor.onScrollStateChanged(scrolling);
+    }
   }
 
   public void setOnDateSelectedListener(OnDateSelectedListener listener) {
-    dateListener = listener;
+    engine.setOnDateSelectedListener(listener);
+  }
+
+  /**
+   * Sets a listener that gets a {@link SelectionDelta} after every change of the selection, made
+   * by the user or through the API.
+   *
+   * @param listener the listener to set, or null for none
+   */
+  public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+    setOnSelectionChangedListener(listener, false);
+  }
+
+  /**
+   * Sets a listener for selection deltas.  With {@code nextFrame} the deltas are held until just
+   * before the next frame and merged, so that the listener runs once however many changes were
+   * made in between; a date selected and unselected again in that time isn't reported at all.
+   */
+  public void setOnSelectionChangedListener(OnSelectionChangedListener listener,
+      boolean nextFrame) {
+    engine.setOnSelectionChangedListener(listener, nextFrame);
   }
 
   /**
@@ -866,7 +538,7 @@ public class CalendarPickerView extends ListView {
    * @param listener the listener to set, or null for no reaction
    */
   public void setOnInvalidDateSelectedListener(OnInvalidDateSelectedListener listener) {
-    invalidDateListener = listener;
+    engine.setOnInvalidDateSelectedListener(listener);
   }
 
   /**
@@ -877,7 +549,18 @@ public class CalendarPickerView extends ListView {
    * it will not be consistently applied.
    */
   public void setDateSelectableFilter(DateSelectableFilter listener) {
-    dateConfiguredListener = listener;
+    engine.setDateSelectableFilter(listener);
+  }
+
+  /**
+   * Set a filter that answers which dates are selectable a whole month at a time.  Its answers are
+   * cached per month; call {@link #invalidateSelectableDates()} when they change.
+   * <p>
+   * Important: set this before you call {@link #init(Date, Date)} methods.  If called afterwards,
+   * it will not be consistently applied.
+   */
+  public void setMonthSelectableFilter(MonthSelectableFilter filter) {
+    engine.setMonthSelectableFilter(filter);
   }
 
   /**
@@ -887,21 +570,52 @@ public class CalendarPickerView extends ListView {
    * it will not be consistently applied.
    */
   public void setCustomDayView(DayViewAdapter dayViewAdapter) {
-    this.dayViewAdapter = dayViewAdapter;
-    if (null != adapter) {
-      adapter.notifyDataSetChanged();
-    }
+    engine.setCustomDayView(dayViewAdapter);
+  }
+
+  /**
+   * Draws each month with a single view instead of the ~100 views of a {@link MonthView}, which
+   * makes months much cheaper to create, measure and lay out.  Cells look the same and decorators
+   * and custom day views still apply, though months that use them draw a little slower.
+   */
+  public void setCanvasMonths(boolean canvasMonths) {
+    engine.setCanvasMonths(canvasMonths);
+  }
+
+  /**
+   * Keeps the grid of each month in a hardware layer, so that frames that only scroll the list
+   * draw the months from their layers instead of redrawing every cell and divider.  A layer costs
+   * a month-sized texture, and a month's layer is redrawn whenever one of its cells changes.
+   */
+  public void setMonthLayers(boolean monthLayers) {
+    engine.setMonthLayers(monthLayers);
+  }
+
+  /**
+   * Shows a heatmap: {@code values} holds one number per day from {@code firstDay} on (NaN for
+   * none), quantized once, linearly between its minimum and maximum, into the colors of
+   * {@code palette} (1 to 31 of them, lowest first).  Current-month days without another state to
+   * show are painted in their bucket's color.  Pass null values to remove the heatmap.  Call it
+   * after {@code init}; the days are taken in the picker's time zone.
+   */
+  public void setHeatmap(Date firstDay, float[] values, int[] palette) {
+    engine.setHeatmap(firstDay, values, palette);
   }
 
   /** Set a listener to intercept clicks on calendar cells. */
   public void setCellClickInterceptor(CellClickInterceptor listener) {
-    cellClickInterceptor = listener;
+    engine.setCellClickInterceptor(listener);
   }
 
   /**
    * Interface to be notified when a new date is selected or unselected. This will only be called
    * when the user initiates the date selection.  If you call {@link #selectDate(Date)} this
    * listener will not be notified.
+   * <p>
+   * In RANGE mode, {@link #onDateUnselected} is not called for the days of a range that a tap
+   * replaces or clears, since that would be one call per day however long the range; an
+   * {@link OnSelectionChangedListener} gets them as ranges.  In SINGLE and MULTIPLE modes every
+   * unselected date is reported.
    *
    * @see #setOnDateSelectedListener(OnDateSelectedListener)
    */
@@ -911,6 +625,17 @@ public class CalendarPickerView extends ListView {
     void onDateUnselected(Date date);
   }
 
+  /**
+   * Interface to be notified of selection changes as a whole: one {@link SelectionDelta} per tap,
+   * batch call or init, listing the ranges of days it selected and unselected, instead of one
+   * callback per date.
+   *
+   * @see #setOnSelectionChangedListener(OnSelectionChangedListener, boolean)
+   */
+  public interface OnSelectionChangedListener {
+    void onSelectionChanged(SelectionDelta delta);
+  }
+
   /**
    * Interface to be notified when an invalid date is selected by the user. This will only be
    * called when the user initiates the date selection. If you call {@link #selectDate(Date)} this
@@ -932,6 +657,20 @@ public class CalendarPickerView extends ListView {
     boolean isDateSelectable(Date date);
   }
 
+  /**
+   * Batch form of {@link DateSelectableFilter}, asked once for each month.
+   *
+   * @see #setMonthSelectableFilter(MonthSelectableFilter)
+   */
+  public interface MonthSelectableFilter {
+    /**
+     * Returns the selectable days of the month as a bit mask, where bit {@code d - 1} is set if
+     * day of month {@code d} is selectable.  {@code month} is zero-based, like
+     * {@link Calendar#MONTH}.
+     */
+    int getSelectableDays(int year, int month);
+  }
+
   /**
    * Interface to be notified when a cell is clicked and possibly intercept the click.  Return true
    * to intercept the click and prevent any selections from changing.
@@ -942,22 +681,21 @@ public class CalendarPickerView extends ListView {
     boolean onCellClicked(Date date);
   }
 
-  private class DefaultOnInvalidDateSelectedListener implements OnInvalidDateSelectedListener {
-    @Override public void onInvalidDateSelected(Date date) {
-      String errMessage =
-              getResources().getString(R.string.invalid_date, fullDateFormat.format(minCal.getTime()),
-                      fullDateFormat.format(maxCal.getTime()));
-      Toast.makeText(getContext(), errMessage, Toast.LENGTH_SHORT).show();
-    }
-  }
-
   //单选日期和多选日期监听
   public interface OnSingleAndMutipleChoiceListener {
     void onSingleChoice(Date date);
     void onMutipleChoice(Date startDate,Date endDate);
   }
+  /**
+   * The listener last set with {@link #setOnSingleAndMutipleChoiceListener}.
+   *
+   * @deprecated Setting this field directly has no effect: clicks are reported to the listener
+   * given to {@link #setOnSingleAndMutipleChoiceListener}.
+   */
+  @Deprecated
   public OnSingleAndMutipleChoiceListener mOnSingleAndMutipleChoiceListener;
   public void setOnSingleAndMutipleChoiceListener(OnSingleAndMutipleChoiceListener onSingleAndMutipleChoiceListener){
     mOnSingleAndMutipleChoiceListener=onSingleAndMutipleChoiceListener;
+    engine.setOnSingleAndMutipleChoiceListener(onSingleAndMutipleChoiceListener);
   }
 }
@@ -0,0 +1,426 @@
+package com.docwei.datepicker.timesquare;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Parcelable;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.docwei.datepicker.timesquare.CalendarPickerView.CellClickInterceptor;
+import com.docwei.datepicker.timesquare.CalendarPickerView.DateSelectableFilter;
+import com.docwei.datepicker.timesquare.CalendarPickerView.FluentInitializer;
+import com.docwei.datepicker.timesquare.CalendarPickerView.MonthSelectableFilter;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnDateSelectedListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnInvalidDateSelectedListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnSelectionChangedListener;
+import com.docwei.datepicker.timesquare.CalendarPickerView.OnSingleAndMutipleChoiceListener;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static java.util.Calendar.YEAR;
+
+/**
+ * {@link CalendarPickerView} on a RecyclerView.  It has the same init methods,
+ * {@link FluentInitializer} and listeners, and shares its engine, but the months are laid out by a
+ * {@link LinearLayoutManager}:
+ * <ul>
+ * <li>months have stable ids (their month ordinals), so moving the window of an open-ended
+ * calendar inserts and removes months instead of rebinding all of them;</li>
+ * <li>a selection change only rebinds the changed cells of the months it touched, through a
+ * payload, instead of walking every month on screen;</li>
+ * <li>months about to scroll into view are inflated and bound ahead of time in the gaps between
+ * frames (GapWorker prefetch, on Lollipop and up) rather than in the frame that shows them.</li>
+ * </ul>
+ */
+public class CalendarRecyclerView extends RecyclerView {
+  /** Payload of a change that only needs the dirty cells of a month rebound. */
+  private static final Object PAYLOAD_CELLS = new Object();
+
+  private final CalendarPickerEngine engine;
+  private final MonthAdapter adapter;
+  private final LinearLayoutManager layoutManager;
+  /** View type of the months; changes with the day view adapter so old views aren't reused. */
+  private int monthViewType;
+  private ScrollJankMonitor jankMonitor;
+  private boolean scrolling;
+
+  public CalendarRecyclerView(Context context, AttributeSet attrs) {
+    super(context, attrs);
+
+    adapter = new MonthAdapter();
+    engine = new CalendarPickerEngine(new RecyclerHost());
+    setBackgroundColor(engine.loadStyle(context, attrs));
+    layoutManager = new LinearLayoutManager(context);
+    // On by default, but the picker depends on it: it moves inflation out of scrolling frames.
+    layoutManager.setItemPrefetchEnabled(true);
+    setLayoutManager(layoutManager);
+    // Months don't animate; a change animation would also cross-fade every full rebind.
+    setItemAnimator(null);
+    addOnScrollListener(new OnScrollListener() {
+      @Override public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        scrolling = newState != SCROLL_STATE_IDLE;
+        if (jankMonitor != null) {
+          jankMonitor.onScrollStateChanged(scrolling);
+        }
+      }
+    });
+
+    if (isInEditMode()) {
+      Calendar nextYear = Calendar.getInstance(engine.getTimeZone(), engine.getLocale());
+      nextYear.add(YEAR, 1);
+
+      init(new Date(), nextYear.getTime()) //
+              .withSelectedDate(new Date());
+    }
+  }
+
+  public FluentInitializer init(Date minDate, Date maxDate, TimeZone timeZone, Locale locale) {
+    engine.init(minDate, maxDate, timeZone, locale);
+    return new FluentInitializer(engine);
+  }
+
+  public FluentInitializer init(Date minDate, Date maxDate) {
+    return init(minDate, maxDate, TimeZone.getDefault(), Locale.getDefault());
+  }
+
+  public FluentInitializer init(Date minDate, Date maxDate, Locale locale) {
+    return init(minDate, maxDate, TimeZone.getDefault(), locale);
+  }
+
+  /** See {@link CalendarPickerView#initOpenEnded(Date, TimeZone, Locale)}. */
+  public FluentInitializer initOpenEnded(Date date, TimeZone timeZone, Locale locale) {
+    engine.initOpenEnded(date, timeZone, locale);
+    return new FluentInitializer(engine);
+  }
+
+  public FluentInitializer initOpenEnded(Date date) {
+    return initOpenEnded(date, TimeZone.getDefault(), Locale.getDefault());
+  }
+
+  @Override protected Parcelable onSaveInstanceState() {
+    return engine.saveState(super.onSaveInstanceState());
+  }
+
+  @Override protected void onRestoreInstanceState(Parcelable state) {
+    if (!(state instanceof CalendarPickerEngine.SavedState)) {
+      super.onRestoreInstanceState(state);
+      return;
+    }
+    CalendarPickerEngine.SavedState ss = (CalendarPickerEngine.SavedState) state;
+    super.onRestoreInstanceState(ss.getSuperState());
+    engine.restoreState(ss);
+  }
+
+  @Override protected void onMeasure(int widthSpec, int heightSpec) {
+    engine.checkInitialized();
+    super.onMeasure(widthSpec, heightSpec);
+  }
+
+  public void setDecorators(List<CalendarCellDecorator> decorators) {
+    engine.setDecorators(decorators);
+  }
+
+  public List<CalendarCellDecorator> getDecorators() {
+    return engine.getDecorators();
+  }
+
+  /** See {@link CalendarPickerView#setMonthDecorators(List)}. */
+  public void setMonthDecorators(List<CalendarMonthDecorator> decorators) {
+    engine.setMonthDecorators(decorators);
+  }
+
+  public List<CalendarMonthDecorator> getMonthDecorators() {
+    return engine.getMonthDecorators();
+  }
+
+  public boolean scrollToDate(Date date) {
+    return engine.scrollToDate(date);
+  }
+
+  /** See {@link CalendarPickerView#fixDialogDimens()}. */
+  public void fixDialogDimens() {
+    getLayoutParams().height = getMeasuredHeight();
+    getLayoutParams().width = getMeasuredWidth();
+    post(new Runnable() {
+      @Override public void run() {
+        engine.scrollToSelectedDates();
+      }
+    });
+  }
+
+  /** See {@link CalendarPickerView#unfixDialogDimens()}. */
+  public void unfixDialogDimens() {
+    getLayoutParams().height = ViewGroup.LayoutParams.MATCH_PARENT;
+    getLayoutParams().width = ViewGroup.LayoutParams.MATCH_PARENT;
+    requestLayout();
+  }
+
+  public void setTitleTypeface(Typeface titleTypeface) {
+    engine.setTitleTypeface(titleTypeface);
+  }
+
+  public void setDateTypeface(Typeface dateTypeface) {
+    engine.setDateTypeface(dateTypeface);
+  }
+
+  public void setTypeface(Typeface typeface) {
+    setTitleTypeface(typeface);
+    setDateTypeface(typeface);
+  }
+
+  public Date getSelectedDate() {
+    return engine.getSelectedDate();
+  }
+
+  public boolean selectDate(Date date) {
+    return selectDate(date, false);
+  }
+
+  public boolean selectDate(Date date, boolean smoothScroll) {
+    return engine.selectDate(date, smoothScroll);
+  }
+
+  /** See {@link CalendarPickerView#getSelectionSnapshot()}. */
+  public SelectionSnapshot getSelectionSnapshot() {
+    return engine.getSelectionSnapshot();
+  }
+
+  /** See {@link CalendarPickerView#compareAndSetSelection(SelectionSnapshot, Collection)}. */
+  public boolean compareAndSetSelection(SelectionSnapshot expected, Collection<Date> dates) {
+    return engine.compareAndSetSelection(expected, dates);
+  }
+
+  public List<Date> getSelectedDates() {
+    return engine.getSelectedDates();
+  }
+
+  public int selectDates(Collection<Date> dates) {
+    return selectDates(dates, false);
+  }
+
+  /** See {@link CalendarPickerView#selectDates(Collection, boolean)}. */
+  public int selectDates(Collection<Date> dates, boolean smoothScroll) {
+    return engine.selectDates(dates, smoothScroll);
+  }
+
+  /** See {@link CalendarPickerView#deselectDates(Collection)}. */
+  public int deselectDates(Collection<Date> dates) {
+    return engine.deselectDates(dates);
+  }
+
+  /** See {@link CalendarPickerView#setSelection(Collection)}. */
+  public void setSelection(Collection<Date> dates) {
+    engine.setSelection(dates, false);
+  }
+
+  /** See {@link CalendarPickerView#setBackgroundExecutor(Executor)}. */
+  public void setBackgroundExecutor(Executor executor) {
+    engine.setBackgroundExecutor(executor);
+  }
+
+  public void invalidateSelectableDates() {
+    engine.invalidateSelectableDates();
+  }
+
+  public void invalidateSelectableDates(Date from, Date to) {
+    engine.invalidateSelectableDates(from, to);
+  }
+
+  public void setOnDateSelectedListener(OnDateSelectedListener listener) {
+    engine.setOnDateSelectedListener(listener);
+  }
+
+  public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+    setOnSelectionChangedListener(listener, false);
+  }
+
+  /** See {@link CalendarPickerView#setOnSelectionChangedListener(OnSelectionChangedListener, boolean)}. */
+  public void setOnSelectionChangedListener(OnSelectionChangedListener listener,
+      boolean nextFrame) {
+    engine.setOnSelectionChangedListener(listener, nextFrame);
+  }
+
+  /** See {@link CalendarPickerView#setScrollJankMonitor(ScrollJankMonitor)}. */
+  public void setScrollJankMonitor(ScrollJankMonitor monitor) {
+    if (jankMonitor != null) {
+      jankMonitor.onScrollStateChanged(false);
+    }
+    jankMonitor = monitor;
+    if (monitor != null) {
+      monitor.onScrollStateChanged(scrolling);
+    }
+  }
+
+  public void setOnInvalidDateSelectedListener(OnInvalidDateSelectedListener listener) {
+    engine.setOnInvalidDateSelectedListener(listener);
+  }
+
+  public void setOnSingleAndMutipleChoiceListener(OnSingleAndMutipleChoiceListener listener) {
+    engine.setOnSingleAndMutipleChoiceListener(listener);
+  }
+
+  public void setDateSelectableFilter(DateSelectableFilter listener) {
+    engine.setDateSelectableFilter(listener);
+  }
+
+  public void setMonthSelectableFilter(MonthSelectableFilter filter) {
+    engine.setMonthSelectableFilter(filter);
+  }
+
+  public void setCustomDayView(DayViewAdapter dayViewAdapter) {
+    monthViewType++;
+    engine.setCustomDayView(dayViewAdapter);
+  }
+
+  /** See {@link CalendarPickerView#setCanvasMonths(boolean)}. */
+  public void setCanvasMonths(boolean canvasMonths) {
+    monthViewType++;
+    engine.setCanvasMonths(canvasMonths);
+  }
+
+  /** See {@link CalendarPickerView#setMonthLayers(boolean)}. */
+  public void setMonthLayers(boolean monthLayers) {
+    engine.setMonthLayers(monthLayers);
+  }
+
+  /** See {@link CalendarPickerView#setHeatmap(Date, float[], int[])}. */
+  public void setHeatmap(Date firstDay, float[] values, int[] palette) {
+    engine.setHeatmap(firstDay, values, palette);
+  }
+
+  public void setCellClickInterceptor(CellClickInterceptor listener) {
+    engine.setCellClickInterceptor(listener);
+  }
+
+  private static class MonthHolder extends ViewHolder {
+    final MonthRenderer monthView;
+
+    MonthHolder(View monthView) {
+      super(monthView);
+      this.monthView = (MonthRenderer) monthView;
+    }
+  }
+
+  private class MonthAdapter extends Adapter<MonthHolder> {
+    private final LayoutInflater inflater;
+
+    MonthAdapter() {
+      inflater = LayoutInflater.from(getContext());
+      setHasStableIds(true);
+    }
+
+    @Override public int getItemCount() {
+      return engine.months.size();
+    }
+
+    @Override public long getItemId(int position) {
+      return engine.monthOrdinalAt(position);
+    }
+
+    @Override public int getItemViewType(int position) {
+      return monthViewType;
+    }
+
+    @Override public MonthHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+      return new MonthHolder(engine.createMonthView(parent, inflater));
+    }
+
+    @Override public void onBindViewHolder(MonthHolder holder, int position) {
+      engine.bindMonthView(holder.monthView, position);
+    }
+
+    @Override public void onBindViewHolder(MonthHolder holder, int position,
+            List<Object> payloads) {
+      // Payloads only ever carry PAYLOAD_CELLS, and are dropped if the month needs a full bind.
+      if (!payloads.isEmpty() && engine.isCurrent(holder.monthView)) {
+        holder.monthView.rebindChangedCells();
+      } else {
+        onBindViewHolder(holder, position);
+      }
+    }
+  }
+
+  /** Drives this RecyclerView for the {@link CalendarPickerEngine}. */
+  private class RecyclerHost implements CalendarPickerEngine.Host {
+    @Override public Context getContext() {
+      return CalendarRecyclerView.this.getContext();
+    }
+
+    @Override public boolean post(Runnable action) {
+      return CalendarRecyclerView.this.post(action);
+    }
+
+    @Override public void postOnAnimation(Runnable action) {
+      ViewCompat.postOnAnimation(CalendarRecyclerView.this, action);
+    }
+
+    @Override public void onMonthsChanged() {
+      if (getAdapter() == null) {
+        setAdapter(adapter);
+      }
+      adapter.notifyDataSetChanged();
+    }
+
+    @Override public void onMonthsInserted(int position, int count) {
+      adapter.notifyItemRangeInserted(position, count);
+    }
+
+    @Override public void onMonthsRemoved(int position, int count) {
+      adapter.notifyItemRangeRemoved(position, count);
+    }
+
+    /**
+     * Sends the months with dirty cells a {@link #PAYLOAD_CELLS} change, so that only those cells
+     * are rebound.  Months on screen whose model was evicted from the cache missed the change and
+     * get a full bind instead.
+     */
+    @Override public void onCellsChanged() {
+      for (int i = 0; i < getChildCount(); i++) {
+        MonthHolder holder = (MonthHolder) getChildViewHolder(getChildAt(i));
+        int position = holder.getAdapterPosition();
+        if (position != NO_POSITION && !engine.isCurrent(holder.monthView)) {
+          adapter.notifyItemChanged(position);
+        }
+      }
+      for (int i = 0; i < engine.cachedModelCount(); i++) {
+        MonthModel model = engine.cachedModelAt(i);
+        int position = engine.positionOf(model.getMonthOrdinal());
+        if (position >= 0 && model.hasDirtyCells()) {
+          adapter.notifyItemChanged(position, PAYLOAD_CELLS);
+        }
+      }
+    }
+
+    @Override public int getFirstVisibleMonth() {
+      return layoutManager.findFirstVisibleItemPosition();
+    }
+
+    @Override public int getLastVisibleMonth() {
+      return layoutManager.findLastVisibleItemPosition();
+    }
+
+    @Override public int getFirstVisibleTop() {
+      View top = layoutManager.findViewByPosition(layoutManager.findFirstVisibleItemPosition());
+      return top == null ? 0 : top.getTop();
+    }
+
+    @Override public void showMonth(int position, int top) {
+      layoutManager.scrollToPositionWithOffset(position, top);
+    }
+
+    @Override public void smoothScrollToMonth(int position) {
+      smoothScrollToPosition(position);
+    }
+  }
+}
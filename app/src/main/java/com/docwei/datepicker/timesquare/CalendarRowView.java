@@ -16,6 +16,9 @@ import static android.view.View.MeasureSpec.makeMeasureSpec;
 public class CalendarRowView extends ViewGroup implements View.OnClickListener {
   private boolean isHeaderRow;
   private MonthView.Listener listener;
+  private MonthModel month;
+  private int row;
+  private boolean isRtl;
 
 
   public CalendarRowView(Context context, AttributeSet attrs) {
@@ -28,9 +31,13 @@ public class CalendarRowView extends ViewGroup implements View.OnClickListener {
   }
 
   @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-    long start = System.currentTimeMillis();
+    long start = Tracer.begin(Tracer.SECTION_ROW_MEASURE);
     final int totalWidth = MeasureSpec.getSize(widthMeasureSpec);
-    int rowHeight = 0;
+    // With an exact height (the grid knows it from MonthMeasureCache) every cell gets that height,
+    // and there's no tallest cell to look for.
+    final boolean exactHeight = MeasureSpec.getMode(heightMeasureSpec) == EXACTLY;
+    int rowHeight = exactHeight
+        ? MeasureSpec.getSize(heightMeasureSpec) - getPaddingTop() - getPaddingBottom() : 0;
     for (int c = 0, numChildren = getChildCount(); c < numChildren; c++) {
       final View child = getChildAt(c);
       // Calculate width cells, making sure to cover totalWidth.
@@ -38,21 +45,26 @@ public class CalendarRowView extends ViewGroup implements View.OnClickListener {
       int r = ((c + 1) * totalWidth) / 7;
       int cellSize = r - l;
       int cellWidthSpec = makeMeasureSpec(cellSize, EXACTLY);
-      int cellHeightSpec = isHeaderRow ? makeMeasureSpec(cellSize, AT_MOST) : cellWidthSpec;
+      int cellHeightSpec;
+      if (exactHeight) {
+        cellHeightSpec = makeMeasureSpec(rowHeight, EXACTLY);
+      } else {
+        cellHeightSpec = isHeaderRow ? makeMeasureSpec(cellSize, AT_MOST) : cellWidthSpec;
+      }
       child.measure(cellWidthSpec, cellHeightSpec);
       // The row height is the height of the tallest cell.
-      if (child.getMeasuredHeight() > rowHeight) {
+      if (!exactHeight && child.getMeasuredHeight() > rowHeight) {
         rowHeight = child.getMeasuredHeight();
       }
     }
     final int widthWithPadding = totalWidth + getPaddingLeft() + getPaddingRight();
     final int heightWithPadding = rowHeight + getPaddingTop() + getPaddingBottom();
     setMeasuredDimension(widthWithPadding, heightWithPadding);
-    Logr.d("Row.onMeasure %d ms", System.currentTimeMillis() - start);
+    Tracer.end(Tracer.SECTION_ROW_MEASURE, start);
   }
 
   @Override protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-    long start = System.currentTimeMillis();
+    long start = Tracer.begin(Tracer.SECTION_ROW_LAYOUT);
     int cellHeight = bottom - top;
     int width = (right - left);
     for (int c = 0, numChildren = getChildCount(); c < numChildren; c++) {
@@ -61,7 +73,7 @@ public class CalendarRowView extends ViewGroup implements View.OnClickListener {
       int r = ((c + 1) * width) / 7;
       child.layout(l, 0, r, cellHeight);
     }
-    Logr.d("Row.onLayout %d ms", System.currentTimeMillis() - start);
+    Tracer.end(Tracer.SECTION_ROW_LAYOUT, start);
   }
 
   public void setIsHeaderRow(boolean isHeaderRow) {
@@ -70,12 +82,20 @@ public class CalendarRowView extends ViewGroup implements View.OnClickListener {
 
   @Override public void onClick(View v) {
     // Header rows don't have a click listener
-    if (listener != null) {
-      listener.handleClick((MonthCellDescriptor) v.getTag());
+    if (listener != null && month != null) {
+      int column = indexOfChild(v);
+      listener.handleClick(month.getCell(row * 7 + (isRtl ? 6 - column : column)));
     }
 
   }
 
+  /** Binds this row to week {@code row} of {@code month}, so clicks can find their cell. */
+  void setMonth(MonthModel month, int row, boolean isRtl) {
+    this.month = month;
+    this.row = row;
+    this.isRtl = isRtl;
+  }
+
   public void setListener(MonthView.Listener listener) {
     this.listener = listener;
   }
@@ -0,0 +1,236 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Per-day values (prices, event counts, badge ids...) for a picker to show, indexed by month: the
+ * months that have values are kept sorted in a primitive array, each with an {@code int[31]} of
+ * its days, so looking up a cell is a direct array read once its month is found.
+ * <p>
+ * This is a {@link CalendarMonthDecorator}: pass it to
+ * {@link CalendarPickerView#setMonthDecorators(java.util.List)} and implement
+ * {@link #apply(CalendarCellView, int)} to show a value on a cell.  A month is read once per bind
+ * of a new month; changing a value redecorates only the cached months showing that day, and
+ * rebinds only the cells whose value changed.  Load many values between {@link #beginBatch()} and
+ * {@link #endBatch()} so that the picker is told once.
+ * <p>
+ * Values are non-zero; 0 stands for "no value", so putting 0 removes a day's value.  Dates are
+ * taken in the time zone given to the constructor, which should be the picker's.  Not thread
+ * safe: use it from the main thread.
+ */
+public abstract class DayAnnotations implements CalendarMonthDecorator {
+  private final TimeZone timeZone;
+  /** Month ordinals (see {@link EpochDays}) that have a value, sorted. */
+  private int[] months = new int[8];
+  /** Values of the days of {@code months[i]}, indexed by day of month - 1. */
+  private int[][] buckets = new int[8][];
+  private int monthCount;
+  /** First and last day that have a value, as epoch days; empty if min > max. */
+  private int minDay = Integer.MAX_VALUE;
+  private int maxDay = Integer.MIN_VALUE;
+  /** Days changed since the picker was last told, as epoch days; empty if from > to. */
+  private int changedFrom = Integer.MAX_VALUE;
+  private int changedTo = Integer.MIN_VALUE;
+  /** True if {@link #clear()} was called since the picker was last told. */
+  private boolean clearedAll;
+  private int batchDepth;
+  private InvalidationListener listener;
+
+  protected DayAnnotations(TimeZone timeZone) {
+    this.timeZone = timeZone;
+  }
+
+  protected DayAnnotations() {
+    this(TimeZone.getDefault());
+  }
+
+  /** Returns the value of {@code date}, or 0 if it has none. */
+  public int get(Date date) {
+    int day = EpochDays.fromDate(date, timeZone);
+    int ordinal = EpochDays.monthOrdinalOf(day);
+    int index = Arrays.binarySearch(months, 0, monthCount, ordinal);
+    return index < 0 ? 0 : buckets[index][day - EpochDays.firstDayOfMonth(ordinal)];
+  }
+
+  /** Sets the value of {@code date}, replacing any it had. */
+  public void put(Date date, int value) {
+    put(EpochDays.fromDate(date, timeZone), value);
+  }
+
+  /** Sets the value of a day; {@code month} is zero-based, as in {@link java.util.Calendar}. */
+  public void put(int year, int month, int dayOfMonth, int value) {
+    put(EpochDays.of(year, month, dayOfMonth), value);
+  }
+
+  public void remove(Date date) {
+    put(date, 0);
+  }
+
+  /** Removes every value. */
+  public void clear() {
+    Arrays.fill(buckets, 0, monthCount, null);
+    monthCount = 0;
+    minDay = Integer.MAX_VALUE;
+    maxDay = Integer.MIN_VALUE;
+    clearedAll = true;
+    if (batchDepth == 0) {
+      dispatchChanges();
+    }
+  }
+
+  /**
+   * Holds back change notifications until the matching {@link #endBatch()}, which then tells the
+   * picker once about every day changed in between.  Batches may nest.
+   */
+  public void beginBatch() {
+    batchDepth++;
+  }
+
+  public void endBatch() {
+    if (batchDepth == 0) {
+      throw new IllegalStateException("endBatch() without beginBatch()");
+    }
+    if (--batchDepth == 0) {
+      dispatchChanges();
+    }
+  }
+
+  private void put(int day, int value) {
+    int ordinal = EpochDays.monthOrdinalOf(day);
+    int index = Arrays.binarySearch(months, 0, monthCount, ordinal);
+    if (index < 0) {
+      if (value == 0) {
+        return;
+      }
+      index = insertMonth(-index - 1, ordinal);
+    }
+    int[] bucket = buckets[index];
+    int dayIndex = day - EpochDays.firstDayOfMonth(ordinal);
+    if (bucket[dayIndex] == value) {
+      return;
+    }
+    bucket[dayIndex] = value;
+    if (value != 0) {
+      minDay = Math.min(minDay, day);
+      maxDay = Math.max(maxDay, day);
+    } else {
+      if (isEmpty(bucket)) {
+        removeMonth(index);
+      }
+      if (day == minDay || day == maxDay) {
+        updateBounds();
+      }
+    }
+    changedFrom = Math.min(changedFrom, day);
+    changedTo = Math.max(changedTo, day);
+    if (batchDepth == 0) {
+      dispatchChanges();
+    }
+  }
+
+  /** Adds an empty bucket for {@code ordinal} at {@code index} and returns its index. */
+  private int insertMonth(int index, int ordinal) {
+    if (monthCount == months.length) {
+      months = Arrays.copyOf(months, monthCount * 2);
+      buckets = Arrays.copyOf(buckets, monthCount * 2);
+    }
+    System.arraycopy(months, index, months, index + 1, monthCount - index);
+    System.arraycopy(buckets, index, buckets, index + 1, monthCount - index);
+    months[index] = ordinal;
+    buckets[index] = new int[31];
+    monthCount++;
+    return index;
+  }
+
+  private void removeMonth(int index) {
+    System.arraycopy(months, index + 1, months, index, monthCount - index - 1);
+    System.arraycopy(buckets, index + 1, buckets, index, monthCount - index - 1);
+    buckets[--monthCount] = null;
+  }
+
+  private static boolean isEmpty(int[] bucket) {
+    for (int value : bucket) {
+      if (value != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Finds the first and last day with a value again; months without values have no bucket. */
+  private void updateBounds() {
+    if (monthCount == 0) {
+      minDay = Integer.MAX_VALUE;
+      maxDay = Integer.MIN_VALUE;
+      return;
+    }
+    int[] first = buckets[0];
+    int dayIndex = 0;
+    while (first[dayIndex] == 0) {
+      dayIndex++;
+    }
+    minDay = EpochDays.firstDayOfMonth(months[0]) + dayIndex;
+    int[] last = buckets[monthCount - 1];
+    dayIndex = last.length - 1;
+    while (last[dayIndex] == 0) {
+      dayIndex--;
+    }
+    maxDay = EpochDays.firstDayOfMonth(months[monthCount - 1]) + dayIndex;
+  }
+
+  private void dispatchChanges() {
+    if (clearedAll) {
+      clearedAll = false;
+      changedFrom = Integer.MAX_VALUE;
+      changedTo = Integer.MIN_VALUE;
+      if (listener != null) {
+        listener.onAllDecorationsChanged();
+      }
+      return;
+    }
+    if (changedFrom > changedTo) {
+      return;
+    }
+    int from = changedFrom;
+    int to = changedTo;
+    changedFrom = Integer.MAX_VALUE;
+    changedTo = Integer.MIN_VALUE;
+    if (listener != null) {
+      listener.onDecorationsChanged(EpochDays.toDate(from, timeZone),
+          EpochDays.toDate(to, timeZone));
+    }
+  }
+
+  /** Returns the first day that has a value, or null while there are none. */
+  @Override public Date getStartDate() {
+    return minDay > maxDay ? null : EpochDays.toDate(minDay, timeZone);
+  }
+
+  @Override public Date getEndDate() {
+    return minDay > maxDay ? null : EpochDays.toDate(maxDay, timeZone);
+  }
+
+  /** Copies the values of the grid's days into {@code out}, one bucket lookup per month shown. */
+  @Override public void decorateMonth(Date firstDay, int[] out) {
+    int day = EpochDays.fromDate(firstDay, timeZone);
+    int ordinal = EpochDays.monthOrdinalOf(day);
+    int monthStart = EpochDays.firstDayOfMonth(ordinal);
+    int monthEnd = monthStart + EpochDays.daysInMonth(ordinal);
+    int index = Arrays.binarySearch(months, 0, monthCount, ordinal);
+    for (int i = 0; i < out.length; i++, day++) {
+      if (day == monthEnd) {
+        ordinal++;
+        monthStart = monthEnd;
+        monthEnd += EpochDays.daysInMonth(ordinal);
+        index = Arrays.binarySearch(months, 0, monthCount, ordinal);
+      }
+      out[i] = index < 0 ? 0 : buckets[index][day - monthStart];
+    }
+  }
+
+  @Override public void setInvalidationListener(InvalidationListener listener) {
+    this.listener = listener;
+  }
+}
@@ -0,0 +1,289 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Arrays;
+
+/**
+ * A set of epoch days (see {@link EpochDays}) stored as sorted, disjoint runs of consecutive days.
+ * A whole season of selected dates is a single run, so memory and query cost depend on the number
+ * of runs rather than the number of days.
+ * <p>
+ * {@link #contains(int)}, {@link #add(int)}, {@link #remove(int)} and {@link #rank(int)} binary
+ * search the runs; {@link #min()}, {@link #max()} and {@link #size()} are constant time.
+ */
+final class EpochDaySet {
+  private int[] starts = new int[4];
+  /** Exclusive end of each run. */
+  private int[] ends = new int[4];
+  private int runCount;
+  private int size;
+  /** Number of days in the runs before each run, rebuilt on the first rank query after a change. */
+  private int[] before;
+  private boolean beforeValid;
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    runCount = 0;
+    size = 0;
+    beforeValid = false;
+  }
+
+  /** Returns the smallest day in the set.  The set must not be empty. */
+  int min() {
+    checkNotEmpty();
+    return starts[0];
+  }
+
+  /** Returns the largest day in the set.  The set must not be empty. */
+  int max() {
+    checkNotEmpty();
+    return ends[runCount - 1] - 1;
+  }
+
+  boolean contains(int day) {
+    int run = floorRun(day);
+    return run >= 0 && day < ends[run];
+  }
+
+  /** Returns the number of days in the set that are before {@code day}. */
+  int rank(int day) {
+    int run = floorRun(day);
+    if (run < 0) {
+      return 0;
+    }
+    if (!beforeValid) {
+      if (before == null || before.length < runCount) {
+        before = new int[starts.length];
+      }
+      int count = 0;
+      for (int i = 0; i < runCount; i++) {
+        before[i] = count;
+        count += ends[i] - starts[i];
+      }
+      beforeValid = true;
+    }
+    return before[run] + Math.min(day, ends[run]) - starts[run];
+  }
+
+  /** Adds {@code day}, returning false if it was already in the set. */
+  boolean add(int day) {
+    int run = floorRun(day);
+    if (run >= 0 && day < ends[run]) {
+      return false;
+    }
+    boolean joinsPrevious = run >= 0 && ends[run] == day;
+    boolean joinsNext = run + 1 < runCount && starts[run + 1] == day + 1;
+    if (joinsPrevious && joinsNext) {
+      ends[run] = ends[run + 1];
+      removeRuns(run + 1, 1);
+    } else if (joinsPrevious) {
+      ends[run]++;
+    } else if (joinsNext) {
+      starts[run + 1]--;
+    } else {
+      insertRun(run + 1, day, day + 1);
+    }
+    size++;
+    beforeValid = false;
+    return true;
+  }
+
+  /** Adds the days {@code [from, to)}, merging them with the runs they touch. */
+  void addRange(int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    // The runs from first to last overlap or are adjacent to the new days.
+    int first = floorRun(from);
+    if (first < 0 || ends[first] < from) {
+      first++;
+    }
+    int last = floorRun(to);
+    if (first <= last) {
+      from = Math.min(from, starts[first]);
+      to = Math.max(to, ends[last]);
+      for (int run = first; run <= last; run++) {
+        size -= ends[run] - starts[run];
+      }
+      removeRuns(first, last - first + 1);
+    }
+    insertRun(first, from, to);
+    size += to - from;
+    beforeValid = false;
+  }
+
+  /** Removes the days {@code [from, to)}, splitting the run they are inside, if any. */
+  void removeRange(int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int run = floorRun(from);
+    if (run >= 0 && starts[run] < from && ends[run] > to) {
+      insertRun(run + 1, to, ends[run]);
+      ends[run] = from;
+      size -= to - from;
+      beforeValid = false;
+      return;
+    }
+    if (run >= 0 && starts[run] < from && ends[run] > from) {
+      size -= ends[run] - from;
+      ends[run] = from;
+    }
+    // The runs starting in the range are dropped, but for the end of one reaching past it.
+    int first = run >= 0 && starts[run] == from ? run : run + 1;
+    int last = floorRun(to - 1);
+    if (last >= first && ends[last] > to) {
+      size -= to - starts[last];
+      starts[last] = to;
+      last--;
+    }
+    for (int i = first; i <= last; i++) {
+      size -= ends[i] - starts[i];
+    }
+    removeRuns(first, last - first + 1);
+    beforeValid = false;
+  }
+
+  /** Removes {@code day}, returning false if it wasn't in the set. */
+  boolean remove(int day) {
+    int run = floorRun(day);
+    if (run < 0 || day >= ends[run]) {
+      return false;
+    }
+    if (starts[run] == day && ends[run] == day + 1) {
+      removeRuns(run, 1);
+    } else if (starts[run] == day) {
+      starts[run]++;
+    } else if (ends[run] == day + 1) {
+      ends[run]--;
+    } else {
+      insertRun(run + 1, day + 1, ends[run]);
+      ends[run] = day;
+    }
+    size--;
+    beforeValid = false;
+    return true;
+  }
+
+  int runCount() {
+    return runCount;
+  }
+
+  int runStart(int run) {
+    return starts[run];
+  }
+
+  /** Returns the exclusive end of a run. */
+  int runEnd(int run) {
+    return ends[run];
+  }
+
+  /** Returns the runs as {@code [start0, end0, start1, end1, ...]}, with exclusive ends. */
+  int[] toRunArray() {
+    int[] runs = new int[runCount * 2];
+    for (int i = 0; i < runCount; i++) {
+      runs[2 * i] = starts[i];
+      runs[2 * i + 1] = ends[i];
+    }
+    return runs;
+  }
+
+  /** Makes this set a copy of {@code other}. */
+  void setTo(EpochDaySet other) {
+    starts = Arrays.copyOf(other.starts, Math.max(other.runCount, 4));
+    ends = Arrays.copyOf(other.ends, Math.max(other.runCount, 4));
+    runCount = other.runCount;
+    size = other.size;
+    beforeValid = false;
+  }
+
+  /**
+   * Returns the days of this set that aren't in {@code other}, as runs in the format of
+   * {@link #toRunArray()}.  Walks both sets' runs once.
+   */
+  int[] runsNotIn(EpochDaySet other) {
+    int[] runs = new int[8];
+    int count = 0;
+    int j = 0;
+    for (int i = 0; i < runCount; i++) {
+      while (j < other.runCount && other.ends[j] <= starts[i]) {
+        j++;
+      }
+      int from = starts[i];
+      for (int k = j; k < other.runCount && other.starts[k] < ends[i]; k++) {
+        if (other.starts[k] > from) {
+          if (count + 2 > runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+          }
+          runs[count++] = from;
+          runs[count++] = other.starts[k];
+        }
+        from = Math.max(from, other.ends[k]);
+      }
+      if (from < ends[i]) {
+        if (count + 2 > runs.length) {
+          runs = Arrays.copyOf(runs, runs.length * 2);
+        }
+        runs[count++] = from;
+        runs[count++] = ends[i];
+      }
+    }
+    return Arrays.copyOf(runs, count);
+  }
+
+  /** Returns the last run starting on or before {@code day}, or -1 if there is none. */
+  int floorRun(int day) {
+    int low = 0;
+    int high = runCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (starts[mid] <= day) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private void insertRun(int run, int start, int end) {
+    if (runCount == starts.length) {
+      starts = Arrays.copyOf(starts, runCount * 2);
+      ends = Arrays.copyOf(ends, runCount * 2);
+    }
+    System.arraycopy(starts, run, starts, run + 1, runCount - run);
+    System.arraycopy(ends, run, ends, run + 1, runCount - run);
+    starts[run] = start;
+    ends[run] = end;
+    runCount++;
+  }
+
+  private void removeRuns(int run, int count) {
+    System.arraycopy(starts, run + count, starts, run, runCount - run - count);
+    System.arraycopy(ends, run + count, ends, run, runCount - run - count);
+    runCount -= count;
+  }
+
+  private void checkNotEmpty() {
+    if (size == 0) {
+      throw new IllegalStateException("The set is empty.");
+    }
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder("EpochDaySet{");
+    for (int i = 0; i < runCount; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(starts[i]).append("..").append(ends[i] - 1);
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,153 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Calendar-free date arithmetic.  Dates are represented as epoch days (the number of days since
+ * 1970-01-01 in the picker's time zone) and months as month ordinals ({@code year * 12 + month},
+ * with a zero-based month like {@link Calendar#MONTH}).  Days of the week use the
+ * {@link Calendar#SUNDAY}..{@link Calendar#SATURDAY} constants.
+ * <p>
+ * Everything here is plain int math on the proleptic Gregorian calendar, so building and querying
+ * month grids never has to create or mutate a {@link Calendar}.
+ */
+final class EpochDays {
+  static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+  private static final long DST_LOOKBEHIND = 6L * 60 * 60 * 1000;
+
+  /** Days from 0000-03-01 to 1970-01-01. */
+  private static final int DAYS_0000_TO_1970 = 719468;
+  private static final int DAYS_PER_ERA = 146097;
+  /** 1970-01-01 was a Thursday. */
+  private static final int EPOCH_DAY_OF_WEEK = Calendar.THURSDAY;
+
+  private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+  private EpochDays() {
+  }
+
+  static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+
+  static int daysInMonth(int year, int month) {
+    return month == Calendar.FEBRUARY && isLeapYear(year) ? 29 : DAYS_IN_MONTH[month];
+  }
+
+  static int daysInMonth(int monthOrdinal) {
+    return daysInMonth(yearOf(monthOrdinal), monthOf(monthOrdinal));
+  }
+
+  /** Returns the epoch day of the given date; {@code month} is zero-based. */
+  static int of(int year, int month, int dayOfMonth) {
+    // Shift the year so that it starts in March and the leap day is the last day of the year.
+    int y = month < 2 ? year - 1 : year;
+    int m = month < 2 ? month + 10 : month - 2;
+    int era = floorDiv(y, 400);
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * m + 2) / 5 + dayOfMonth - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+  }
+
+  /** Returns the epoch day containing {@code millis} in {@code timeZone}. */
+  static int fromMillis(long millis, TimeZone timeZone) {
+    return (int) floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY);
+  }
+
+  static int fromDate(Date date, TimeZone timeZone) {
+    return fromMillis(date.getTime(), timeZone);
+  }
+
+  /**
+   * Returns the first instant of {@code epochDay} in {@code timeZone}.  That is local midnight,
+   * except when a DST transition skips midnight, in which case it's the instant the day starts.
+   */
+  static long toMillis(int epochDay, TimeZone timeZone) {
+    long local = epochDay * MILLIS_PER_DAY;
+    long utc = local - timeZone.getOffset(local);
+    utc = local - timeZone.getOffset(utc);
+    // Near a DST transition the offset in effect a few hours earlier may give a better answer:
+    // the first of two midnights when the clock is set back, or the start of the day when
+    // midnight is skipped.
+    long earlier = local - timeZone.getOffset(utc - DST_LOOKBEHIND);
+    if (earlier != utc && fromMillis(earlier, timeZone) == epochDay
+        && (earlier < utc || fromMillis(utc, timeZone) != epochDay)) {
+      utc = earlier;
+    }
+    return utc;
+  }
+
+  static Date toDate(int epochDay, TimeZone timeZone) {
+    return new Date(toMillis(epochDay, timeZone));
+  }
+
+  /** Returns the day of the week, from {@link Calendar#SUNDAY} to {@link Calendar#SATURDAY}. */
+  static int dayOfWeek(int epochDay) {
+    return floorMod(epochDay + EPOCH_DAY_OF_WEEK - 1, 7) + 1;
+  }
+
+  static int monthOrdinal(int year, int month) {
+    return year * 12 + month;
+  }
+
+  static int yearOf(int monthOrdinal) {
+    return floorDiv(monthOrdinal, 12);
+  }
+
+  static int monthOf(int monthOrdinal) {
+    return floorMod(monthOrdinal, 12);
+  }
+
+  /** Returns the month ordinal of the month containing {@code epochDay}. */
+  static int monthOrdinalOf(int epochDay) {
+    int z = epochDay + DAYS_0000_TO_1970;
+    int era = floorDiv(z, DAYS_PER_ERA);
+    int dayOfEra = z - era * DAYS_PER_ERA;
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int m = (5 * dayOfYear + 2) / 153;
+    int year = yearOfEra + era * 400 + (m >= 10 ? 1 : 0);
+    int month = m < 10 ? m + 2 : m - 10;
+    return monthOrdinal(year, month);
+  }
+
+  static int dayOfMonth(int epochDay) {
+    return epochDay - firstDayOfMonth(monthOrdinalOf(epochDay)) + 1;
+  }
+
+  static int firstDayOfMonth(int monthOrdinal) {
+    return of(yearOf(monthOrdinal), monthOf(monthOrdinal), 1);
+  }
+
+  /**
+   * Returns the epoch day shown in the top-left cell of the month's grid, i.e. the last
+   * {@code firstDayOfWeek} on or before the first of the month.
+   */
+  static int firstCellOfMonth(int monthOrdinal, int firstDayOfWeek) {
+    int first = firstDayOfMonth(monthOrdinal);
+    return first - floorMod(dayOfWeek(first) - firstDayOfWeek, 7);
+  }
+
+  /** Returns the number of week rows needed to show the month. */
+  static int weeksInMonth(int monthOrdinal, int firstDayOfWeek) {
+    int leading = firstDayOfMonth(monthOrdinal) - firstCellOfMonth(monthOrdinal, firstDayOfWeek);
+    return (leading + daysInMonth(monthOrdinal) + 6) / 7;
+  }
+
+  static int floorDiv(int x, int y) {
+    int q = x / y;
+    return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+  }
+
+  static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+  }
+
+  static int floorMod(int x, int y) {
+    return x - floorDiv(x, y) * y;
+  }
+}
@@ -0,0 +1,57 @@
+package com.docwei.datepicker.timesquare;
+
+/**
+ * A per-day series quantized into the buckets of a small color palette.  The quantization is done
+ * once, when the heatmap is set; months then store each cell's bucket in their
+ * {@link MonthModel} flags and cells paint the palette color of their bucket, so binding and
+ * drawing never look at the series again.
+ */
+final class Heatmap {
+  /** Most colors a palette may have: buckets take 5 bits of the cell flags, 0 meaning none. */
+  static final int MAX_COLORS = 31;
+
+  private final int firstDay;
+  /** Bucket of each day from {@link #firstDay}, plus one; 0 for days without a value. */
+  private final byte[] buckets;
+  private final int[] palette;
+
+  /**
+   * Quantizes {@code values}, the series from the epoch day {@code firstDay} on, linearly between
+   * its minimum and maximum into {@code palette.length} buckets.  NaN stands for no value.
+   */
+  Heatmap(int firstDay, float[] values, int[] palette) {
+    if (palette.length == 0 || palette.length > MAX_COLORS) {
+      throw new IllegalArgumentException(
+          "A heatmap needs 1 to " + MAX_COLORS + " colors, got " + palette.length);
+    }
+    this.firstDay = firstDay;
+    this.palette = palette.clone();
+    buckets = new byte[values.length];
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (float value : values) {
+      if (!Float.isNaN(value)) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+    }
+    final float scale = max > min ? palette.length / (max - min) : 0;
+    for (int i = 0; i < values.length; i++) {
+      if (!Float.isNaN(values[i])) {
+        int bucket = Math.min((int) ((values[i] - min) * scale), palette.length - 1);
+        buckets[i] = (byte) (bucket + 1);
+      }
+    }
+  }
+
+  /** Returns the bucket of {@code epochDay} plus one, or 0 if it has no value. */
+  int bucketOf(int epochDay) {
+    int index = epochDay - firstDay;
+    return index >= 0 && index < buckets.length ? buckets[index] : 0;
+  }
+
+  /** Returns the color of a bucket returned by {@link #bucketOf(int)}, or 0 for no value. */
+  int colorOf(int bucket) {
+    return bucket == 0 ? 0 : palette[bucket - 1];
+  }
+}
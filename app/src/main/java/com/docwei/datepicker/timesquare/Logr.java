@@ -1,18 +1,21 @@
 package com.docwei.datepicker.timesquare;
 
-import android.support.compat.BuildConfig;
 import android.util.Log;
+import com.docwei.datepicker.BuildConfig;
 
-/** Log utility class to handle the log tag and DEBUG-only logging. */
+/** Log utility class to handle the log tag and DEBUG-only logging.  Timings go to {@link Tracer}. */
 final class Logr {
+  /** Whether debug logging is on.  Check it before building log arguments on hot paths. */
+  static final boolean DEBUG = BuildConfig.DEBUG;
+
   public static void d(String message) {
-    if (BuildConfig.DEBUG) {
+    if (DEBUG) {
       Log.d("TimesSquare", message);
     }
   }
 
   public static void d(String message, Object... args) {
-    if (BuildConfig.DEBUG) {
+    if (DEBUG) {
       d(String.format(message, args));
     }
   }
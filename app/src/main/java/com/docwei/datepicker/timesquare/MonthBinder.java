@@ -0,0 +1,62 @@
+package com.docwei.datepicker.timesquare;
+
+/**
+ * The view-independent part of binding a month: works out the text and state of each cell of a
+ * {@link MonthModel} and hands them to a {@link CellSink}.  It only reads the model and looks up
+ * strings in {@link CalendarFormats}, so binding allocates nothing however often months are bound
+ * while the list scrolls.
+ */
+final class MonthBinder {
+  /** Receives the cells of a month as they are bound. */
+  interface CellSink {
+    /**
+     * Binds the cell at {@code row}, {@code column} on screen, which shows cell {@code index} of
+     * the model.  {@code flags} are the cell's {@link MonthModel} flags.
+     */
+    void bindCell(int row, int column, int index, int flags, String text);
+  }
+
+  private MonthBinder() {
+  }
+
+  /** Binds every cell of the model. */
+  static void bindAll(MonthModel model, CalendarFormats formats, boolean isRtl, CellSink sink) {
+    // Every cell is bound here, so earlier changes don't need a partial rebind.
+    model.takeDirtyCells();
+    final int count = model.getCellCount();
+    for (int index = 0; index < count; index++) {
+      bindCell(model, index, formats, isRtl, sink);
+    }
+  }
+
+  /** Binds only the cells whose flags changed since the model was last bound. */
+  static void bindChanged(MonthModel model, CalendarFormats formats, boolean isRtl,
+      CellSink sink) {
+    long dirty = model.takeDirtyCells();
+    while (dirty != 0) {
+      int index = Long.numberOfTrailingZeros(dirty);
+      dirty &= dirty - 1;
+      bindCell(model, index, formats, isRtl, sink);
+    }
+  }
+
+  private static void bindCell(MonthModel model, int index, CalendarFormats formats,
+      boolean isRtl, CellSink sink) {
+    int flags = model.getFlags(index);
+    int column = index % 7;
+    sink.bindCell(index / 7, isRtl ? 6 - column : column, index, flags, textOf(flags, formats));
+  }
+
+  /** Returns the text of a cell: today's label, else its start/end label, else its day number. */
+  static String textOf(int flags, CalendarFormats formats) {
+    int dayOfMonth = MonthModel.valueOf(flags);
+    if ((flags & MonthModel.FLAG_TODAY) != 0) {
+      return CalendarFormats.TODAY;
+    } else if ((flags & MonthModel.FLAG_END) != 0) {
+      return formats.endLabel(dayOfMonth);
+    } else if ((flags & MonthModel.FLAG_START) != 0) {
+      return formats.startLabel(dayOfMonth);
+    }
+    return formats.dayNumber(dayOfMonth);
+  }
+}
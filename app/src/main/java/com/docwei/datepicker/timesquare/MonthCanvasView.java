@@ -0,0 +1,436 @@
+package com.docwei.datepicker.timesquare;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.docwei.datepicker.R;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static android.view.View.MeasureSpec.EXACTLY;
+import static android.view.View.MeasureSpec.makeMeasureSpec;
+
+/**
+ * A month drawn by a single view: title, weekday headers, cells and dividers go straight to the
+ * canvas instead of through the ~100 views of {@code month.xml}.  Cells take their background and
+ * text color from the same selectors as {@link CalendarCellView}, with the drawable state built
+ * from the cell's {@link MonthModel} flags, so both renderers look alike.
+ * <p>
+ * Decorators and custom {@link DayViewAdapter}s work on real cell views, so when any is set
+ * the cells are drawn through one off-screen {@link CalendarCellView} that is bound and decorated
+ * like a cell of {@link MonthView} before being drawn in each cell's place.
+ */
+@SuppressLint("ViewConstructor")
+class MonthCanvasView extends View implements MonthRenderer {
+  /** Backgrounds and colors that {@code month.xml} and {@link CalendarGridView} hard-code. */
+  private static final int HEADER_BACKGROUND = 0xfff65100;
+  private static final int GRID_BACKGROUND = 0x551abc9c;
+  private static final int ROW_DIVIDER_COLOR = 0xff1abc9c;
+  /** See {@link CalendarGridView}. */
+  private static final float FLOAT_FUDGE = 0.5f;
+  /** The flags that affect how a cell is drawn. */
+  private static final int STATE_FLAGS = MonthModel.FLAG_CURRENT_MONTH
+      | MonthModel.FLAG_SELECTABLE | MonthModel.FLAG_SELECTED | MonthModel.FLAG_TODAY
+      | MonthModel.FLAG_HIGHLIGHTED | MonthModel.FLAG_START | MonthModel.FLAG_END
+      | MonthModel.RANGE_MASK;
+  /** States whose background shows instead of the heatmap color. */
+  private static final int HEAT_HIDING_FLAGS = MonthModel.FLAG_SELECTED | MonthModel.FLAG_TODAY
+      | MonthModel.FLAG_HIGHLIGHTED | MonthModel.RANGE_MASK | MonthModel.FLAG_START
+      | MonthModel.FLAG_END;
+  private static final int PRESSED = 1 << 30;
+  /** Drawable states by flags, shared by every month.  Only used on the main thread. */
+  private static final SparseArray<int[]> STATE_SETS = new SparseArray<>();
+
+  private final MonthView.Listener listener;
+  private final CalendarFormats formats;
+  private final int firstDayOfWeek;
+  private final boolean isRtl;
+  private final boolean displayHeader;
+  private final DayViewAdapter dayViewAdapter;
+  private final int dayBackgroundResId;
+  private final int dayTextColorResId;
+  private final Drawable cellBackground;
+  private final ColorStateList dayTextColors;
+  private final Paint titlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint headerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint datePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint fillPaint = new Paint();
+  private final Paint dividerPaint = new Paint();
+  private final Paint rowDividerPaint = new Paint();
+  private final Paint.FontMetrics metrics = new Paint.FontMetrics();
+  /** Divider end points as in {@link CalendarGridView}, rebuilt on every layout. */
+  private final float[] columnLines = new float[8 * 4];
+  private final float[] rowLines = new float[7 * 4];
+  private int rowLineCount;
+  private final int titleTopMargin;
+  private final int titleBottomMargin;
+  private final int headerPaddingBottom;
+  private List<CalendarCellDecorator> decorators;
+  private MonthModel model;
+  private String label;
+  private boolean displayOnly;
+  private Typeface dateTypeface;
+  /** Off-screen cell used to draw decorated or custom cells; created on first use. */
+  private CalendarCellView stamp;
+  private int cellSize;
+  private int titleHeight;
+  private int headerHeight;
+  private int pressedIndex = -1;
+
+  MonthCanvasView(Context context, CalendarFormats formats, int firstDayOfWeek,
+      MonthView.Listener listener, int dividerColor, int dayBackgroundResId,
+      int dayTextColorResId, int titleTextColor, boolean displayHeader, int headerTextColor,
+      List<CalendarCellDecorator> decorators, DayViewAdapter dayViewAdapter) {
+    super(context);
+    Resources res = context.getResources();
+    this.formats = formats;
+    this.firstDayOfWeek = firstDayOfWeek;
+    this.listener = listener;
+    this.isRtl = formats.isRtl();
+    this.displayHeader = displayHeader;
+    this.decorators = decorators;
+    this.dayViewAdapter = dayViewAdapter;
+    this.dayBackgroundResId = dayBackgroundResId;
+    this.dayTextColorResId = dayTextColorResId;
+    cellBackground = dayBackgroundResId != 0 ? res.getDrawable(dayBackgroundResId).mutate() : null;
+    dayTextColors = res.getColorStateList(dayTextColorResId);
+
+    titleTopMargin = res.getDimensionPixelOffset(R.dimen.calendar_month_topmargin);
+    titleBottomMargin = res.getDimensionPixelOffset(R.dimen.calendar_month_title_bottommargin);
+    headerPaddingBottom = res.getDimensionPixelOffset(R.dimen.calendar_day_headers_paddingbottom);
+    titlePaint.setTextSize(res.getDimension(R.dimen.calendar_text_medium));
+    titlePaint.setTypeface(Typeface.DEFAULT_BOLD);
+    titlePaint.setTextAlign(Paint.Align.CENTER);
+    titlePaint.setColor(titleTextColor);
+    headerPaint.setTextSize(res.getDimension(R.dimen.calendar_text_small));
+    headerPaint.setTextAlign(Paint.Align.CENTER);
+    headerPaint.setColor(headerTextColor);
+    datePaint.setTextSize(res.getDimension(R.dimen.calendar_text_medium));
+    datePaint.setTypeface(Typeface.DEFAULT_BOLD);
+    datePaint.setTextAlign(Paint.Align.CENTER);
+    dividerPaint.setColor(dividerColor);
+    rowDividerPaint.setColor(ROW_DIVIDER_COLOR);
+    updateTitleHeight();
+  }
+
+  @Override public void init(MonthDescriptor month, MonthModel model, boolean displayOnly,
+      Typeface titleTypeface, Typeface dateTypeface) {
+    if (Logr.DEBUG) {
+      Logr.d("Initializing MonthCanvasView (%d) for %s", System.identityHashCode(this), month);
+    }
+    boolean rowsChanged = this.model == null || this.model.getNumRows() != model.getNumRows();
+    this.model = model;
+    this.label = month.getLabel();
+    this.displayOnly = displayOnly;
+    pressedIndex = -1;
+    if (titleTypeface != null && titleTypeface != titlePaint.getTypeface()) {
+      titlePaint.setTypeface(titleTypeface);
+      updateTitleHeight();
+      rowsChanged = true;
+    }
+    if (dateTypeface != null && dateTypeface != this.dateTypeface) {
+      this.dateTypeface = dateTypeface;
+      datePaint.setTypeface(dateTypeface);
+      stamp = null;
+    }
+    // Everything is drawn from the model, so earlier changes don't need a partial rebind.
+    model.takeDirtyCells();
+    if (rowsChanged) {
+      requestLayout();
+    }
+    invalidate();
+  }
+
+  @Override public void setDecorators(List<CalendarCellDecorator> decorators) {
+    this.decorators = decorators;
+  }
+
+  @Override public MonthModel getModel() {
+    return model;
+  }
+
+  @Override public void rebindChangedCells() {
+    if (model != null && model.takeDirtyCells() != 0) {
+      invalidate();
+    }
+  }
+
+  private void updateTitleHeight() {
+    titlePaint.getFontMetrics(metrics);
+    titleHeight = titleTopMargin + (int) Math.ceil(metrics.descent - metrics.ascent)
+        + titleBottomMargin;
+  }
+
+  @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    int width = MeasureSpec.getSize(widthMeasureSpec);
+    cellSize = width / 7;
+    headerHeight = 0;
+    if (displayHeader) {
+      // Like the header row of month.xml: wrap_content, at most a cell high.
+      headerPaint.getFontMetrics(metrics);
+      headerHeight = Math.min(cellSize,
+          (int) Math.ceil(metrics.descent - metrics.ascent) + headerPaddingBottom);
+    }
+    int rows = model == null ? 6 : model.getNumRows();
+    setMeasuredDimension(width, titleHeight + headerHeight + rows * cellSize);
+  }
+
+  @Override protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+    super.onLayout(changed, left, top, right, bottom);
+    final int gridWidth = cellSize * 7;
+    final int gridTop = titleHeight + headerHeight;
+    final int rows = model == null ? 6 : model.getNumRows();
+    final int gridBottom = gridTop + rows * cellSize;
+    rowLineCount = 0;
+    if (displayHeader) {
+      setLine(rowLines, rowLineCount++, 0, gridTop - 1, gridWidth - 2, gridTop - 1);
+    }
+    for (int row = 1; row <= rows; row++) {
+      float y = gridTop + row * cellSize - 1;
+      setLine(rowLines, rowLineCount++, 0, y, gridWidth - 2, y);
+    }
+    setLine(columnLines, 0, FLOAT_FUDGE, gridTop, FLOAT_FUDGE, gridBottom);
+    for (int c = 1; c <= 7; c++) {
+      float x = c * cellSize - FLOAT_FUDGE;
+      setLine(columnLines, c, x, gridTop, x, gridBottom);
+    }
+  }
+
+  private static void setLine(float[] lines, int line, float x0, float y0, float x1, float y1) {
+    lines[line * 4] = x0;
+    lines[line * 4 + 1] = y0;
+    lines[line * 4 + 2] = x1;
+    lines[line * 4 + 3] = y1;
+  }
+
+  @Override protected void onDraw(Canvas canvas) {
+    if (model == null) {
+      return;
+    }
+    final int gridWidth = cellSize * 7;
+    if (label != null) {
+      titlePaint.getFontMetrics(metrics);
+      canvas.drawText(label, getWidth() / 2f, titleTopMargin - metrics.ascent, titlePaint);
+    }
+
+    int top = titleHeight;
+    if (displayHeader) {
+      fillPaint.setColor(HEADER_BACKGROUND);
+      canvas.drawRect(0, top, gridWidth, top + headerHeight, fillPaint);
+      headerPaint.getFontMetrics(metrics);
+      float baseline = top - metrics.ascent;
+      for (int offset = 0; offset < 7; offset++) {
+        String name = formats.weekdayName(MonthView.getDayOfWeek(firstDayOfWeek, offset, isRtl));
+        canvas.drawText(name, offset * cellSize + cellSize / 2f, baseline, headerPaint);
+      }
+      top += headerHeight;
+    }
+
+    final int rows = model.getNumRows();
+    final int bottom = top + rows * cellSize;
+    fillPaint.setColor(GRID_BACKGROUND);
+    canvas.drawRect(0, top, gridWidth + 2, bottom, fillPaint);
+    boolean useStamp = (decorators != null && !decorators.isEmpty()) || model.hasDecorators()
+        || dayViewAdapter.getClass() != DefaultDayViewAdapter.class;
+    datePaint.getFontMetrics(metrics);
+    for (int index = 0; index < model.getCellCount(); index++) {
+      int column = index % 7;
+      int left = (isRtl ? 6 - column : column) * cellSize;
+      int cellTop = top + index / 7 * cellSize;
+      if (useStamp) {
+        drawStamped(canvas, index, left, cellTop);
+      } else {
+        drawCell(canvas, index, left, cellTop);
+      }
+    }
+
+    // Dividers, as CalendarGridView draws them: row bottoms, then the left and right of each cell.
+    canvas.drawLines(rowLines, 0, rowLineCount * 4, rowDividerPaint);
+    canvas.drawLines(columnLines, dividerPaint);
+  }
+
+  private void drawCell(Canvas canvas, int index, int left, int top) {
+    int flags = model.getFlags(index);
+    int[] state = stateOf(flags, index == pressedIndex);
+    if (cellBackground != null) {
+      cellBackground.setState(state);
+      cellBackground.setBounds(left, top, left + cellSize, top + cellSize);
+      cellBackground.draw(canvas);
+    }
+    // Heat takes the place of the plain day background, as in CalendarCellView.
+    int heatColor = model.heatColorOf(flags);
+    if (heatColor != 0 && index != pressedIndex
+        && (flags & (MonthModel.FLAG_CURRENT_MONTH | HEAT_HIDING_FLAGS))
+            == MonthModel.FLAG_CURRENT_MONTH) {
+      fillPaint.setColor(heatColor);
+      canvas.drawRect(left, top, left + cellSize, top + cellSize, fillPaint);
+    }
+    datePaint.setColor(dayTextColors.getColorForState(state, dayTextColors.getDefaultColor()));
+    String text = MonthBinder.textOf(flags, formats);
+    // Start and end labels are two lines; draw each one centered, without splitting the string.
+    int newline = text.indexOf('\n');
+    int lines = newline < 0 ? 1 : 2;
+    float lineHeight = metrics.descent - metrics.ascent;
+    float baseline = top + (cellSize - lines * lineHeight) / 2 - metrics.ascent;
+    float x = left + cellSize / 2f;
+    if (newline < 0) {
+      canvas.drawText(text, x, baseline, datePaint);
+    } else {
+      canvas.drawText(text, 0, newline, x, baseline, datePaint);
+      canvas.drawText(text, newline + 1, text.length(), x, baseline + lineHeight, datePaint);
+    }
+  }
+
+  /** Draws a cell through {@link #stamp}, bound and decorated like a {@link MonthView} cell. */
+  private void drawStamped(Canvas canvas, int index, int left, int top) {
+    CalendarCellView cellView = getStamp();
+    int flags = model.getFlags(index);
+    boolean isCurrentMonth = (flags & MonthModel.FLAG_CURRENT_MONTH) != 0;
+    cellView.getDayOfMonthTextView().setText(MonthBinder.textOf(flags, formats));
+    cellView.setEnabled(isCurrentMonth);
+    cellView.setSelectable((flags & MonthModel.FLAG_SELECTABLE) != 0);
+    cellView.setSelected((flags & MonthModel.FLAG_SELECTED) != 0);
+    cellView.setCurrentMonth(isCurrentMonth);
+    cellView.setToday((flags & MonthModel.FLAG_TODAY) != 0);
+    cellView.setRangeState(MonthModel.rangeStateOf(flags));
+    cellView.setHighlighted((flags & MonthModel.FLAG_HIGHLIGHTED) != 0);
+    cellView.setStart((flags & MonthModel.FLAG_START) != 0);
+    cellView.setEnd((flags & MonthModel.FLAG_END) != 0);
+    cellView.setHeatColor(model.heatColorOf(flags));
+    long start = Tracer.begin(Tracer.SECTION_DECORATE);
+    if (decorators != null && !decorators.isEmpty()) {
+      Date date = model.getDate(index);
+      for (int i = 0; i < decorators.size(); i++) {
+        decorators.get(i).decorate(cellView, date);
+      }
+    }
+    model.applyDecorations(index, cellView);
+    Tracer.end(Tracer.SECTION_DECORATE, start);
+    int spec = makeMeasureSpec(cellSize, EXACTLY);
+    cellView.measure(spec, spec);
+    cellView.layout(0, 0, cellSize, cellSize);
+    canvas.save();
+    canvas.translate(left, top);
+    cellView.draw(canvas);
+    canvas.restore();
+  }
+
+  private CalendarCellView getStamp() {
+    if (stamp == null) {
+      stamp = new CalendarCellView(getContext(), null);
+      dayViewAdapter.makeCellView(stamp);
+      if (dayBackgroundResId != 0) {
+        stamp.setBackgroundResource(dayBackgroundResId);
+      }
+      stamp.getDayOfMonthTextView().setTextColor(
+          getResources().getColorStateList(dayTextColorResId));
+      if (dateTypeface != null) {
+        stamp.getDayOfMonthTextView().setTypeface(dateTypeface);
+      }
+    }
+    return stamp;
+  }
+
+  /** Returns the drawable state {@link CalendarCellView} would have for a cell's flags. */
+  private static int[] stateOf(int flags, boolean pressed) {
+    int key = (flags & STATE_FLAGS) | (pressed ? PRESSED : 0);
+    int[] state = STATE_SETS.get(key);
+    if (state == null) {
+      int[] states = new int[12];
+      int n = 0;
+      if ((flags & MonthModel.FLAG_CURRENT_MONTH) != 0) {
+        // Cells of the neighbouring months are disabled.
+        states[n++] = android.R.attr.state_enabled;
+        states[n++] = R.attr.tsquare_state_current_month;
+      }
+      if ((flags & MonthModel.FLAG_SELECTABLE) != 0) {
+        states[n++] = R.attr.tsquare_state_selectable;
+      }
+      if ((flags & MonthModel.FLAG_SELECTED) != 0) {
+        states[n++] = android.R.attr.state_selected;
+      }
+      if (pressed) {
+        states[n++] = android.R.attr.state_pressed;
+      }
+      if ((flags & MonthModel.FLAG_TODAY) != 0) {
+        states[n++] = R.attr.tsquare_state_today;
+      }
+      if ((flags & MonthModel.FLAG_START) != 0) {
+        states[n++] = R.attr.tsquare_state_start;
+      }
+      if ((flags & MonthModel.FLAG_END) != 0) {
+        states[n++] = R.attr.tsquare_state_end;
+      }
+      if ((flags & MonthModel.FLAG_HIGHLIGHTED) != 0) {
+        states[n++] = R.attr.tsquare_state_highlighted;
+      }
+      if ((flags & MonthModel.FLAG_RANGE_FIRST) != 0) {
+        states[n++] = R.attr.tsquare_state_range_first;
+      } else if ((flags & MonthModel.FLAG_RANGE_MIDDLE) != 0) {
+        states[n++] = R.attr.tsquare_state_range_middle;
+      } else if ((flags & MonthModel.FLAG_RANGE_LAST) != 0) {
+        states[n++] = R.attr.tsquare_state_range_last;
+      }
+      state = Arrays.copyOf(states, n);
+      STATE_SETS.put(key, state);
+    }
+    return state;
+  }
+
+  /** Returns the model index of the enabled cell under {@code x}, {@code y}, or -1. */
+  private int cellAt(float x, float y) {
+    int gridTop = titleHeight + headerHeight;
+    if (model == null || cellSize == 0 || x < 0 || y < gridTop) {
+      return -1;
+    }
+    int row = (int) (y - gridTop) / cellSize;
+    int column = (int) x / cellSize;
+    if (row >= model.getNumRows() || column >= 7) {
+      return -1;
+    }
+    int index = row * 7 + (isRtl ? 6 - column : column);
+    return model.is(index, MonthModel.FLAG_CURRENT_MONTH) ? index : -1;
+  }
+
+  @SuppressLint("ClickableViewAccessibility")
+  @Override public boolean onTouchEvent(MotionEvent event) {
+    if (displayOnly || model == null) {
+      return false;
+    }
+    switch (event.getActionMasked()) {
+      case MotionEvent.ACTION_DOWN:
+        pressedIndex = cellAt(event.getX(), event.getY());
+        if (pressedIndex < 0) {
+          return false;
+        }
+        invalidate();
+        return true;
+      case MotionEvent.ACTION_UP:
+        int index = cellAt(event.getX(), event.getY());
+        boolean clicked = index >= 0 && index == pressedIndex;
+        pressedIndex = -1;
+        invalidate();
+        if (clicked && listener != null) {
+          listener.handleClick(model.getCell(index));
+        }
+        return true;
+      case MotionEvent.ACTION_CANCEL:
+        pressedIndex = -1;
+        invalidate();
+        return true;
+      default:
+        return true;
+    }
+  }
+}
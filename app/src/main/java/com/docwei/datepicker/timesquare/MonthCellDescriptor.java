@@ -2,137 +2,118 @@ package com.docwei.datepicker.timesquare;
 
 import java.util.Date;
 
-/** Describes the state of a particular date cell in a {@link MonthView}. */
+/**
+ * Describes the state of a particular date cell in a {@link MonthView}.  This is a view over one
+ * cell of a {@link MonthModel}: getters read its packed flags and setters write them back.
+ */
 class MonthCellDescriptor {
   public enum RangeState {
     NONE, FIRST, MIDDLE, LAST
   }
 
-  private final Date date;
-  private final int value;
-  private final boolean isCurrentMonth;
-  private boolean isSelected;
-  private final boolean isToday;
-  private final boolean isSelectable;
-  private boolean isHighlighted;
-  private RangeState rangeState;
+  private final MonthModel month;
+  private final int index;
+  private Date date;
 
-  public boolean isStart() {
-    return isStart;
+  MonthCellDescriptor(MonthModel month, int index) {
+    this.month = month;
+    this.index = index;
   }
 
-  public void setStart(boolean start) {
-    isStart = start;
+  MonthModel getMonth() {
+    return month;
   }
 
-  public boolean isEnd() {
-    return isEnd;
+  int getIndex() {
+    return index;
   }
 
-  public void setEnd(boolean end) {
-    isEnd = end;
-  }
-
-  private  boolean isStart;
-  private boolean isEnd;
-
-  public CalendarCellView getCalendarCellView() {
-    return mCalendarCellView;
-  }
-
-  public void setCalendarCellView(CalendarCellView calendarCellView) {
-    mCalendarCellView = calendarCellView;
-  }
-
-  private CalendarCellView mCalendarCellView;
-  MonthCellDescriptor(Date date, boolean currentMonth, boolean selectable, boolean selected,
-      boolean today, boolean highlighted,boolean isStart,boolean isEnd, int value, RangeState rangeState) {
-    this.date = date;
-    isCurrentMonth = currentMonth;
-    isSelectable = selectable;
-    isHighlighted = highlighted;
-    isSelected = selected;
-    isToday = today;
-    this.value = value;
-    this.rangeState = rangeState;
-    this.isStart=isStart;
-    this.isEnd=isEnd;
-  }
-  MonthCellDescriptor(Date date, boolean currentMonth, boolean selectable, boolean selected,
-                      boolean today, boolean isStart,boolean isEnd,int value, RangeState rangeState) {
-    this.date = date;
-    isCurrentMonth = currentMonth;
-    isSelectable = selectable;
-    isSelected = selected;
-    isToday = today;
-    this.value = value;
-    this.rangeState = rangeState;
-    this.isStart=isStart;
-    this.isEnd=isEnd;
+  /** Returns the date of this cell as an epoch day (see {@link EpochDays}). */
+  int getDay() {
+    return month.getDay(index);
   }
+
   public Date getDate() {
+    if (date == null) {
+      date = month.getDate(index);
+    }
     return date;
   }
 
   public boolean isCurrentMonth() {
-    return isCurrentMonth;
+    return month.is(index, MonthModel.FLAG_CURRENT_MONTH);
   }
 
   public boolean isSelectable() {
-    return isSelectable;
+    return month.is(index, MonthModel.FLAG_SELECTABLE);
   }
 
   public boolean isSelected() {
-    return isSelected;
+    return month.is(index, MonthModel.FLAG_SELECTED);
   }
 
   public void setSelected(boolean selected) {
-    isSelected = selected;
+    month.set(index, MonthModel.FLAG_SELECTED, selected);
+  }
+
+  public boolean isStart() {
+    return month.is(index, MonthModel.FLAG_START);
   }
 
+  public void setStart(boolean start) {
+    month.set(index, MonthModel.FLAG_START, start);
+  }
+
+  public boolean isEnd() {
+    return month.is(index, MonthModel.FLAG_END);
+  }
+
+  public void setEnd(boolean end) {
+    month.set(index, MonthModel.FLAG_END, end);
+  }
 
   boolean isHighlighted() {
-    return isHighlighted;
+    return month.is(index, MonthModel.FLAG_HIGHLIGHTED);
   }
 
   void setHighlighted(boolean highlighted) {
-    isHighlighted = highlighted;
+    month.set(index, MonthModel.FLAG_HIGHLIGHTED, highlighted);
   }
 
   public boolean isToday() {
-    return isToday;
+    return month.is(index, MonthModel.FLAG_TODAY);
   }
 
   public RangeState getRangeState() {
-    return rangeState;
+    return MonthModel.rangeStateOf(month.getFlags(index));
   }
 
   public void setRangeState(RangeState rangeState) {
-    this.rangeState = rangeState;
+    month.setFlags(index, MonthModel.RANGE_MASK, MonthModel.rangeFlagOf(rangeState));
   }
 
   public int getValue() {
-    return value;
+    return MonthModel.valueOf(month.getFlags(index));
   }
 
   @Override public String toString() {
     return "MonthCellDescriptor{"
         + "date="
-        + date
+        + getDate()
         + ", value="
-        + value
+        + getValue()
         + ", isCurrentMonth="
-        + isCurrentMonth
+        + isCurrentMonth()
         + ", isSelected="
-        + isSelected
+        + isSelected()
         + ", isToday="
-        + isToday
+        + isToday()
         + ", isSelectable="
-        + isSelectable
+        + isSelectable()
         + ", isHighlighted="
-        + isHighlighted
+        + isHighlighted()
         + ", rangeState="
-        + rangeState
+        + getRangeState()
         + '}';
   }
 }
@@ -0,0 +1,70 @@
+package com.docwei.datepicker.timesquare;
+
+/**
+ * Grid measurements shared by all months of a picker.  Every month is as wide as the picker and
+ * has 4 to 6 rows, so once one month of a shape has been measured the others can take its header
+ * height and total height from here instead of measuring their rows to find out.
+ * <p>
+ * Entries are keyed by (width, rows, header shown, font scale); the few there are (one per row
+ * count and orientation) are kept in parallel arrays so lookups don't allocate.  Only used on the
+ * main thread.
+ */
+final class MonthMeasureCache {
+  private static final int SIZE = 8;
+
+  private final int[] widths = new int[SIZE];
+  private final int[] rowCounts = new int[SIZE];
+  private final boolean[] headers = new boolean[SIZE];
+  private final float[] fontScales = new float[SIZE];
+  private final int[] headerHeights = new int[SIZE];
+  private final int[] totalHeights = new int[SIZE];
+  private int count;
+  /** Slot the next entry goes in once the cache is full. */
+  private int next;
+
+  /** Returns the index of the entry for this shape, or -1 if it hasn't been measured yet. */
+  int find(int width, int rows, boolean header, float fontScale) {
+    for (int i = 0; i < count; i++) {
+      if (widths[i] == width && rowCounts[i] == rows && headers[i] == header
+          && fontScales[i] == fontScale) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Height of the weekday header row of entry {@code index}, or 0 if it is hidden. */
+  int headerHeight(int index) {
+    return headerHeights[index];
+  }
+
+  /** Height of the whole grid of entry {@code index}. */
+  int totalHeight(int index) {
+    return totalHeights[index];
+  }
+
+  void put(int width, int rows, boolean header, float fontScale, int headerHeight,
+      int totalHeight) {
+    int index = find(width, rows, header, fontScale);
+    if (index < 0) {
+      if (count < SIZE) {
+        index = count++;
+      } else {
+        index = next;
+        next = (next + 1) % SIZE;
+      }
+    }
+    widths[index] = width;
+    rowCounts[index] = rows;
+    headers[index] = header;
+    fontScales[index] = fontScale;
+    headerHeights[index] = headerHeight;
+    totalHeights[index] = totalHeight;
+  }
+
+  /** Forgets every entry, e.g. after the header's typeface or text changed. */
+  void clear() {
+    count = 0;
+    next = 0;
+  }
+}
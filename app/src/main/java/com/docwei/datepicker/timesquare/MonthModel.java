@@ -0,0 +1,286 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Packed state of the cells of one month grid.  The grid starts at the epoch day
+ * {@link #getFirstDay()} and each cell is a single int holding its state flags and its day of month,
+ * so a month costs one small primitive array instead of 42 objects.
+ * <p>
+ * Cells are numbered row by row from the top-left, {@code 0 .. getNumRows() * 7 - 1}.  The object
+ * form, {@link MonthCellDescriptor}, is only created on demand by {@link #getCell(int)}.
+ */
+final class MonthModel {
+  static final int FLAG_CURRENT_MONTH = 1;
+  static final int FLAG_SELECTABLE = 1 << 1;
+  static final int FLAG_SELECTED = 1 << 2;
+  static final int FLAG_TODAY = 1 << 3;
+  static final int FLAG_HIGHLIGHTED = 1 << 4;
+  static final int FLAG_START = 1 << 5;
+  static final int FLAG_END = 1 << 6;
+  static final int FLAG_RANGE_FIRST = 1 << 7;
+  static final int FLAG_RANGE_MIDDLE = 1 << 8;
+  static final int FLAG_RANGE_LAST = 1 << 9;
+  static final int RANGE_MASK = FLAG_RANGE_FIRST | FLAG_RANGE_MIDDLE | FLAG_RANGE_LAST;
+  /** Heatmap bucket of the cell plus one (see {@link Heatmap#bucketOf(int)}), 0 for none. */
+  static final int HEAT_SHIFT = 10;
+  static final int HEAT_MASK = Heatmap.MAX_COLORS << HEAT_SHIFT;
+
+  /** The day of month is kept in the high bits of each cell. */
+  private static final int VALUE_SHIFT = 24;
+  private static final int FLAGS_MASK = (1 << VALUE_SHIFT) - 1;
+
+  private final int monthOrdinal;
+  private final int firstDay;
+  private final int numRows;
+  private final TimeZone timeZone;
+  private final int[] cells;
+  /** Cells whose flags changed since the last {@link #takeDirtyCells()}, one bit per cell. */
+  private long dirtyCells;
+  /** The month decorators {@link #decorations} came from, or null if it wasn't decorated. */
+  private CalendarMonthDecorator[] decorators;
+  /** Decorations of every cell, {@code cells.length} entries per decorator. */
+  private int[] decorations;
+  private Heatmap heatmap;
+
+  /**
+   * Creates the grid of the month {@code monthOrdinal} (see {@link EpochDays}) with the day of
+   * month and {@link #FLAG_CURRENT_MONTH} of every cell filled in.
+   */
+  MonthModel(int monthOrdinal, int firstDayOfWeek, TimeZone timeZone) {
+    this.monthOrdinal = monthOrdinal;
+    this.timeZone = timeZone;
+    firstDay = EpochDays.firstCellOfMonth(monthOrdinal, firstDayOfWeek);
+    numRows = EpochDays.weeksInMonth(monthOrdinal, firstDayOfWeek);
+    cells = new int[numRows * 7];
+
+    final int firstOfMonth = EpochDays.firstDayOfMonth(monthOrdinal);
+    final int monthLength = EpochDays.daysInMonth(monthOrdinal);
+    final int leading = firstOfMonth - firstDay;
+    final int previousMonthLength = EpochDays.daysInMonth(monthOrdinal - 1);
+    for (int i = 0; i < cells.length; i++) {
+      if (i < leading) {
+        cells[i] = (previousMonthLength - leading + i + 1) << VALUE_SHIFT;
+      } else if (i < leading + monthLength) {
+        cells[i] = (i - leading + 1) << VALUE_SHIFT | FLAG_CURRENT_MONTH;
+      } else {
+        cells[i] = (i - leading - monthLength + 1) << VALUE_SHIFT;
+      }
+    }
+  }
+
+  int getMonthOrdinal() {
+    return monthOrdinal;
+  }
+
+  /** Returns the epoch day of the top-left cell. */
+  int getFirstDay() {
+    return firstDay;
+  }
+
+  int getNumRows() {
+    return numRows;
+  }
+
+  int getCellCount() {
+    return cells.length;
+  }
+
+  /** Returns the cell showing {@code epochDay}, or -1 if it isn't part of this grid. */
+  int indexOf(int epochDay) {
+    int index = epochDay - firstDay;
+    return index >= 0 && index < cells.length ? index : -1;
+  }
+
+  int getDay(int index) {
+    return firstDay + index;
+  }
+
+  Date getDate(int index) {
+    return EpochDays.toDate(firstDay + index, timeZone);
+  }
+
+  /** Returns the state flags of the cell; use {@link #valueOf(int)} for its day of month. */
+  int getFlags(int index) {
+    return cells[index];
+  }
+
+  boolean is(int index, int flag) {
+    return (cells[index] & flag) != 0;
+  }
+
+  void set(int index, int flag, boolean on) {
+    setFlags(index, flag, on ? flag : 0);
+  }
+
+  /** Replaces the flags in {@code mask} with {@code flags}, leaving the others untouched. */
+  void setFlags(int index, int mask, int flags) {
+    int old = cells[index];
+    cells[index] = (old & ~(mask & FLAGS_MASK)) | (flags & mask & FLAGS_MASK);
+    if (cells[index] != old) {
+      dirtyCells |= 1L << index;
+    }
+  }
+
+  /** Returns whether any cell changed since the last {@link #takeDirtyCells()}. */
+  boolean hasDirtyCells() {
+    return dirtyCells != 0;
+  }
+
+  /**
+   * Returns the cells whose flags changed since the last call, as a bit mask indexed by cell, and
+   * clears it.
+   */
+  long takeDirtyCells() {
+    long dirty = dirtyCells;
+    dirtyCells = 0;
+    return dirty;
+  }
+
+  /**
+   * Stores each cell's {@code heatmap} bucket in its flags; null clears them.  A new heatmap may
+   * give the same buckets other colors, so every cell is left dirty unless it is the same one.
+   */
+  void setHeatmap(Heatmap heatmap) {
+    if (heatmap != this.heatmap) {
+      dirtyCells = -1L >>> (64 - cells.length);
+    }
+    this.heatmap = heatmap;
+    for (int i = 0; i < cells.length; i++) {
+      int bucket = heatmap == null ? 0 : heatmap.bucketOf(firstDay + i);
+      setFlags(i, HEAT_MASK, bucket << HEAT_SHIFT);
+    }
+  }
+
+  /** Returns the heatmap color of a cell with {@code flags}, or 0 if it has none. */
+  int heatColorOf(int flags) {
+    int bucket = (flags & HEAT_MASK) >> HEAT_SHIFT;
+    return bucket == 0 ? 0 : heatmap.colorOf(bucket);
+  }
+
+  /** Returns the decorators this month was last decorated by, or null if it never was. */
+  CalendarMonthDecorator[] getDecorators() {
+    return decorators;
+  }
+
+  /**
+   * Replaces the month's decorations, marking the cells whose decorations changed as dirty.  If
+   * the decorators themselves changed, every cell is.
+   */
+  void setDecorations(CalendarMonthDecorator[] decorators, int[] decorations) {
+    if (decorators != this.decorators) {
+      dirtyCells = -1L >>> (64 - cells.length);
+    } else {
+      for (int i = 0; i < decorations.length; i++) {
+        if (decorations[i] != this.decorations[i]) {
+          dirtyCells |= 1L << (i % cells.length);
+        }
+      }
+    }
+    this.decorators = decorators;
+    this.decorations = decorations;
+  }
+
+  /**
+   * Replaces the decorations of the month decorator {@code decorator} alone, marking the cells
+   * whose decoration changed as dirty.
+   */
+  void setDecorations(int decorator, int[] values) {
+    final int offset = decorator * cells.length;
+    for (int i = 0; i < values.length; i++) {
+      if (decorations[offset + i] != values[i]) {
+        decorations[offset + i] = values[i];
+        dirtyCells |= 1L << i;
+      }
+    }
+  }
+
+  /**
+   * Shows the decorations of cell {@code index} on {@code cellView}.  Decorators that decorated
+   * the view before but are no longer this month's are first called with 0, so they can undo what
+   * they did to it.
+   */
+  void applyDecorations(int index, CalendarCellView cellView) {
+    CalendarMonthDecorator[] applied = cellView.getMonthDecorators();
+    if (applied != decorators && applied != null) {
+      for (CalendarMonthDecorator old : applied) {
+        if (!contains(decorators, old)) {
+          old.apply(cellView, 0);
+        }
+      }
+    }
+    cellView.setMonthDecorators(decorators);
+    if (decorators == null) {
+      return;
+    }
+    for (int d = 0; d < decorators.length; d++) {
+      decorators[d].apply(cellView, decorations[d * cells.length + index]);
+    }
+  }
+
+  private static boolean contains(CalendarMonthDecorator[] decorators,
+      CalendarMonthDecorator decorator) {
+    if (decorators != null) {
+      for (CalendarMonthDecorator d : decorators) {
+        if (d == decorator) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Returns whether this month has month decorators, decorating any cell or not. */
+  boolean hasDecorators() {
+    return decorators != null && decorators.length > 0;
+  }
+
+  /** Returns the object form of a cell.  It reads and writes this model's flags. */
+  MonthCellDescriptor getCell(int index) {
+    return new MonthCellDescriptor(this, index);
+  }
+
+  /** Returns the day of month stored in a cell's flags. */
+  static int valueOf(int flags) {
+    return flags >>> VALUE_SHIFT;
+  }
+
+  static MonthCellDescriptor.RangeState rangeStateOf(int flags) {
+    if ((flags & FLAG_RANGE_FIRST) != 0) {
+      return MonthCellDescriptor.RangeState.FIRST;
+    } else if ((flags & FLAG_RANGE_MIDDLE) != 0) {
+      return MonthCellDescriptor.RangeState.MIDDLE;
+    } else if ((flags & FLAG_RANGE_LAST) != 0) {
+      return MonthCellDescriptor.RangeState.LAST;
+    }
+    return MonthCellDescriptor.RangeState.NONE;
+  }
+
+  static int rangeFlagOf(MonthCellDescriptor.RangeState rangeState) {
+    if (rangeState == null) {
+      return 0;
+    }
+    switch (rangeState) {
+      case FIRST:
+        return FLAG_RANGE_FIRST;
+      case MIDDLE:
+        return FLAG_RANGE_MIDDLE;
+      case LAST:
+        return FLAG_RANGE_LAST;
+      default:
+        return 0;
+    }
+  }
+
+  @Override public String toString() {
+    return "MonthModel{"
+        + "monthOrdinal="
+        + monthOrdinal
+        + ", firstDay="
+        + firstDay
+        + ", numRows="
+        + numRows
+        + '}';
+  }
+}
@@ -0,0 +1,84 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Arrays;
+
+/**
+ * The month models a picker keeps, keyed by month ordinal, least recently used evicted first.
+ * There are only a handful, so they are kept in parallel arrays in order of use, most recent
+ * first: a lookup is a short scan and, unlike an {@code LruCache<Integer, MonthModel>}, boxes
+ * nothing, so binding a month doesn't allocate.  Main thread only.
+ */
+final class MonthModelCache {
+  private final int[] keys;
+  private final MonthModel[] models;
+  private int size;
+
+  MonthModelCache(int capacity) {
+    keys = new int[capacity];
+    models = new MonthModel[capacity];
+  }
+
+  /** Returns the model of {@code monthOrdinal}, or null, and marks it as the most recently used. */
+  MonthModel get(int monthOrdinal) {
+    int index = indexOf(monthOrdinal);
+    if (index < 0) {
+      return null;
+    }
+    MonthModel model = models[index];
+    moveToFront(index, monthOrdinal, model);
+    return model;
+  }
+
+  /** Adds or replaces the model of {@code monthOrdinal}, evicting the least recently used one. */
+  void put(int monthOrdinal, MonthModel model) {
+    int index = indexOf(monthOrdinal);
+    if (index < 0) {
+      index = size < keys.length ? size++ : size - 1;
+    }
+    moveToFront(index, monthOrdinal, model);
+  }
+
+  void remove(int monthOrdinal) {
+    int index = indexOf(monthOrdinal);
+    if (index >= 0) {
+      System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+      System.arraycopy(models, index + 1, models, index, size - index - 1);
+      models[--size] = null;
+    }
+  }
+
+  void evictAll() {
+    Arrays.fill(models, 0, size, null);
+    size = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Returns the key of entry {@code index}, from 0 for the most recently used. */
+  int keyAt(int index) {
+    return keys[index];
+  }
+
+  MonthModel valueAt(int index) {
+    return models[index];
+  }
+
+  private int indexOf(int monthOrdinal) {
+    for (int i = 0; i < size; i++) {
+      if (keys[i] == monthOrdinal) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Shifts the entries before {@code index} down and puts the given one first. */
+  private void moveToFront(int index, int monthOrdinal, MonthModel model) {
+    System.arraycopy(keys, 0, keys, 1, index);
+    System.arraycopy(models, 0, models, 1, index);
+    keys[0] = monthOrdinal;
+    models[0] = model;
+  }
+}
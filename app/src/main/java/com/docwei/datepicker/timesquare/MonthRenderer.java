@@ -0,0 +1,22 @@
+package com.docwei.datepicker.timesquare;
+
+import android.graphics.Typeface;
+
+import java.util.List;
+
+/**
+ * A view showing one month of the picker: {@link MonthView}, built from {@code month.xml}, or
+ * {@link MonthCanvasView}, which draws the whole month itself.
+ */
+interface MonthRenderer {
+  void init(MonthDescriptor month, MonthModel model, boolean displayOnly, Typeface titleTypeface,
+      Typeface dateTypeface);
+
+  void setDecorators(List<CalendarCellDecorator> decorators);
+
+  /** Returns the model the month was last bound to, or null if it hasn't been bound. */
+  MonthModel getModel();
+
+  /** Rebinds only the cells whose flags changed since this month was last bound. */
+  void rebindChangedCells();
+}
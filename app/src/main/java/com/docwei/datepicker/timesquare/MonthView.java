@@ -10,35 +10,33 @@ import android.widget.TextView;
 
 import com.docwei.datepicker.R;
 
-import java.text.DateFormat;
-import java.text.NumberFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
-public class MonthView extends LinearLayout {
+public class MonthView extends LinearLayout implements MonthRenderer {
   TextView title;
 CalendarGridView grid;
   private Listener listener;
   private List<CalendarCellDecorator> decorators;
   private boolean isRtl;
-  private Locale locale;
-
-  public static MonthView create(ViewGroup parent, LayoutInflater inflater,
-                                 DateFormat weekdayNameFormat, Listener listener, Calendar today, int dividerColor,
-                                 int dayBackgroundResId, int dayTextColorResId, int titleTextColor, boolean displayHeader,
-                                 int headerTextColor, Locale locale, DayViewAdapter adapter) {
-    return create(parent, inflater, weekdayNameFormat, listener, today, dividerColor,
+  private CalendarFormats formats;
+  private MonthModel model;
+  private boolean displayOnly;
+
+  static MonthView create(ViewGroup parent, LayoutInflater inflater,
+                          CalendarFormats formats, int firstDayOfWeek, Listener listener, int dividerColor,
+                          int dayBackgroundResId, int dayTextColorResId, int titleTextColor, boolean displayHeader,
+                          int headerTextColor, DayViewAdapter adapter) {
+    return create(parent, inflater, formats, firstDayOfWeek, listener, dividerColor,
         dayBackgroundResId, dayTextColorResId, titleTextColor, displayHeader, headerTextColor, null,
-        locale, adapter);
+        adapter);
   }
 
-  public static MonthView create(ViewGroup parent, LayoutInflater inflater,
-                                 DateFormat weekdayNameFormat, Listener listener, Calendar today, int dividerColor,
-                                 int dayBackgroundResId, int dayTextColorResId, int titleTextColor, boolean displayHeader,
-                                 int headerTextColor, List<CalendarCellDecorator> decorators, Locale locale,
-                                 DayViewAdapter adapter) {
+  static MonthView create(ViewGroup parent, LayoutInflater inflater,
+                          CalendarFormats formats, int firstDayOfWeek, Listener listener, int dividerColor,
+                          int dayBackgroundResId, int dayTextColorResId, int titleTextColor, boolean displayHeader,
+                          int headerTextColor, List<CalendarCellDecorator> decorators,
+                          DayViewAdapter adapter) {
     final MonthView view = (MonthView) inflater.inflate(R.layout.month, parent, false);
     view.setDayViewAdapter(adapter);
     view.setDividerColor(dividerColor);
@@ -51,48 +49,37 @@ CalendarGridView grid;
       view.setDayBackground(dayBackgroundResId);
     }
 
-    final int originalDayOfWeek = today.get(Calendar.DAY_OF_WEEK);
      //决定布局从右向左显示
-    view.isRtl = isRtl(locale);
-    view.locale = locale;
-    int firstDayOfWeek = today.getFirstDayOfWeek();
+    view.isRtl = formats.isRtl();
+    view.formats = formats;
     //美国的是周天------firstDayOfWeek
     final CalendarRowView headerRow = (CalendarRowView) view.grid.getChildAt(0);
 
     for (int offset = 0; offset < 7; offset++) {
       //这里就是周天-周一-周二-，，，，，
-      today.set(Calendar.DAY_OF_WEEK, getDayOfWeek(firstDayOfWeek, offset, view.isRtl));
       final TextView textView = (TextView) headerRow.getChildAt(offset);
-      textView.setText(weekdayNameFormat.format(today.getTime()));
+      textView.setText(formats.weekdayName(getDayOfWeek(firstDayOfWeek, offset, view.isRtl)));
     }
 
-    /*重置日期*/
-    today.set(Calendar.DAY_OF_WEEK, originalDayOfWeek);
     view.listener = listener;
     view.decorators = decorators;
     return view;
   }
 
-  private static int getDayOfWeek(int firstDayOfWeek, int offset, boolean isRtl) {
-    int dayOfWeek = firstDayOfWeek + offset;
+  static int getDayOfWeek(int firstDayOfWeek, int offset, boolean isRtl) {
+    // Wrap around so that e.g. a week starting on Monday ends on Sunday.
+    int dayOfWeek = (firstDayOfWeek - 1 + offset) % 7 + 1;
     if (isRtl) {
       return 8 - dayOfWeek;
     }
     return dayOfWeek;
   }
 
-  private static boolean isRtl(Locale locale) {
-    // TODO convert the build to gradle and use getLayoutDirection instead of this (on 17+)?
-    final int directionality = Character.getDirectionality(locale.getDisplayName(locale).charAt(0));
-    return directionality == Character.DIRECTIONALITY_RIGHT_TO_LEFT
-        || directionality == Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC;
-  }
-
   public MonthView(Context context, AttributeSet attrs) {
     super(context, attrs);
   }
 
-  public void setDecorators(List<CalendarCellDecorator> decorators) {
+  @Override public void setDecorators(List<CalendarCellDecorator> decorators) {
     this.decorators = decorators;
   }
 
@@ -106,16 +93,19 @@ CalendarGridView grid;
     grid = (CalendarGridView) findViewById(R.id.calendar_grid);
   }
 
-  public void init(MonthDescriptor month, List<List<MonthCellDescriptor>> cells,
+  @Override public void init(MonthDescriptor month, MonthModel model,
                    boolean displayOnly, Typeface titleTypeface, Typeface dateTypeface) {
-    Logr.d("Initializing MonthView (%d) for %s", System.identityHashCode(this), month);
-    long start = System.currentTimeMillis();
+    // Logging is guarded here so the varargs aren't boxed on every bind when it's off.
+    if (Logr.DEBUG) {
+      Logr.d("Initializing MonthView (%d) for %s", System.identityHashCode(this), month);
+    }
+    this.model = model;
+    this.displayOnly = displayOnly;
     title.setText(month.getLabel());
     //getLabel()---2017年四月
 
-    NumberFormat numberFormatter = NumberFormat.getInstance(locale);
     //多少行数
-    final int numRows = cells.size();
+    final int numRows = model.getNumRows();
     grid.setNumRows(numRows);
     for (int i = 0; i < 6; i++) {
       CalendarRowView weekRow = (CalendarRowView) grid.getChildAt(i+1);
@@ -125,55 +115,13 @@ CalendarGridView grid;
       if (i < numRows) {
         //如果小于的行数就显示
         weekRow.setVisibility(VISIBLE);
-        //获取每行的月单元描述
-        List<MonthCellDescriptor> week = cells.get(i);
-        for (int c = 0; c < week.size(); c++) {
-          MonthCellDescriptor cell = week.get(isRtl ? 6 - c : c);
-          //每行的孩子-- CalendarCellView
-          CalendarCellView cellView = (CalendarCellView) weekRow.getChildAt(c);
-
-          String cellDate = numberFormatter.format(cell.getValue());
-          Calendar calendar=Calendar.getInstance();
-          Date nowDay=calendar.getTime();
-
-          if (!cellView.getDayOfMonthTextView().getText().equals(cellDate)) {
-            cellView.getDayOfMonthTextView().setText(cellDate);
-
-           /* if(cell.isToday()){
-              cellView.getDayOfMonthTextView().setText(cellDate+"\n"+"开始");
-            }*/
-          }
-          cellView.setEnabled(cell.isCurrentMonth());
-          cellView.setClickable(!displayOnly);
-
-          cellView.setSelectable(cell.isSelectable());
-          cellView.setSelected(cell.isSelected());
-          cellView.setCurrentMonth(cell.isCurrentMonth());
-          cellView.setToday(cell.isToday());
-          cellView.setRangeState(cell.getRangeState());
-          cellView.setHighlighted(cell.isHighlighted());
-          cellView.setTag(cell);
-          cellView.setStart(cell.isStart());
-          cellView.setEnd(cell.isEnd());
-          if(cellView.isStart()){
-            cellView.getDayOfMonthTextView().setText(cellDate + "\n" + "开始");
-          }
-          if(cellView.isEnd()){
-            cellView.getDayOfMonthTextView().setText(cellDate + "\n" + "结束");
-          }
-          if(cellView.isToday()){
-            cellView.getDayOfMonthTextView().setText("今天");
-          }
-          if (null != decorators) {
-            for (CalendarCellDecorator decorator : decorators) {
-              decorator.decorate(cellView, cell.getDate());
-            }
-          }
-        }
+        weekRow.setMonth(model, i, isRtl);
       } else {
         weekRow.setVisibility(GONE);//牛逼了无需显示
       }
     }
+    //每行的孩子-- CalendarCellView
+    MonthBinder.bindAll(model, formats, isRtl, cellSink);
 
     if (titleTypeface != null) {
       title.setTypeface(titleTypeface);
@@ -181,9 +129,53 @@ CalendarGridView grid;
     if (dateTypeface != null) {
       grid.setTypeface(dateTypeface);
     }
+  }
 
-    Logr.d("MonthView.init took %d ms", System.currentTimeMillis() - start);
+  @Override public MonthModel getModel() {
+    return model;
   }
+
+  @Override public void rebindChangedCells() {
+    if (model != null) {
+      MonthBinder.bindChanged(model, formats, isRtl, cellSink);
+    }
+  }
+
+  /** Applies the cells worked out by {@link MonthBinder} to the cell views. */
+  private final MonthBinder.CellSink cellSink = new MonthBinder.CellSink() {
+    @Override public void bindCell(int row, int column, int index, int flags, String text) {
+      CalendarRowView weekRow = (CalendarRowView) grid.getChildAt(row + 1);
+      CalendarCellView cellView = (CalendarCellView) weekRow.getChildAt(column);
+      TextView dayOfMonth = cellView.getDayOfMonthTextView();
+      if (!dayOfMonth.getText().equals(text)) {
+        dayOfMonth.setText(text);
+      }
+      boolean isCurrentMonth = (flags & MonthModel.FLAG_CURRENT_MONTH) != 0;
+      cellView.setEnabled(isCurrentMonth);
+      cellView.setClickable(!displayOnly);
+
+      cellView.setSelectable((flags & MonthModel.FLAG_SELECTABLE) != 0);
+      cellView.setSelected((flags & MonthModel.FLAG_SELECTED) != 0);
+      cellView.setCurrentMonth(isCurrentMonth);
+      cellView.setToday((flags & MonthModel.FLAG_TODAY) != 0);
+      cellView.setRangeState(MonthModel.rangeStateOf(flags));
+      cellView.setHighlighted((flags & MonthModel.FLAG_HIGHLIGHTED) != 0);
+      cellView.setStart((flags & MonthModel.FLAG_START) != 0);
+      cellView.setEnd((flags & MonthModel.FLAG_END) != 0);
+      cellView.setHeatColor(model.heatColorOf(flags));
+      // Decorators take a Date, so only months that have decorators pay for one per cell.
+      long start = Tracer.begin(Tracer.SECTION_DECORATE);
+      if (decorators != null && !decorators.isEmpty()) {
+        Date date = model.getDate(index);
+        for (int i = 0; i < decorators.size(); i++) {
+          decorators.get(i).decorate(cellView, date);
+        }
+      }
+      model.applyDecorations(index, cellView);
+      Tracer.end(Tracer.SECTION_DECORATE, start);
+    }
+  };
+
   public void setDividerColor(int color) {
     grid.setDividerColor(color);
   }
@@ -0,0 +1,216 @@
+package com.docwei.datepicker.timesquare;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * Opt-in monitor of the frames drawn while a picker scrolls.  Set it with
+ * {@link CalendarPickerView#setScrollJankMonitor(ScrollJankMonitor)}: from the moment the list
+ * starts scrolling until it stops, every frame's length is read from {@link Choreographer} frame
+ * callbacks, and the time the picker spends in each {@link #PHASE_INFLATE phase} is added to the
+ * frame it delays.  A frame is janky when it takes longer than the frame budget; the time spent in
+ * each phase during janky frames tells which one to blame.  When the scroll ends, the listener gets
+ * a {@link Report}.
+ * <p>
+ * Frame callbacks need Jelly Bean; on older devices the monitor reports nothing.  Phases are timed
+ * by the {@link Tracer}'s sections, which cost a single branch while nothing is monitored.
+ */
+public final class ScrollJankMonitor {
+  /** Creating month views: {@code MonthView.create}, or a canvas month's constructor. */
+  public static final int PHASE_INFLATE = 0;
+  /** Binding a month to its view, {@code MonthView.init}, including {@link #PHASE_DECORATE}. */
+  public static final int PHASE_BIND = 1;
+  /** Running cell and month decorators. */
+  public static final int PHASE_DECORATE = 2;
+  /** {@code CalendarGridView.onMeasure}, including the measure of its rows. */
+  public static final int PHASE_MEASURE = 3;
+  /** {@code CalendarGridView.onLayout}, including the layout of its rows. */
+  public static final int PHASE_LAYOUT = 4;
+  public static final int PHASE_COUNT = 5;
+
+  private static final long DEFAULT_FRAME_BUDGET_NANOS = 1000000000L / 60;
+
+  /** The monitor of the picker that is scrolling, if any.  Main thread only. */
+  private static ScrollJankMonitor active;
+
+  public interface Listener {
+    /** Called on the main thread when a monitored scroll comes to rest. */
+    void onScrollReport(Report report);
+  }
+
+  /** The frames of one scroll, from the first touch or fling to rest.  Immutable. */
+  public static final class Report {
+    private final int frames;
+    private final int jankyFrames;
+    private final long worstFrameNanos;
+    private final long[] phaseNanos;
+    private final long[] jankyPhaseNanos;
+
+    Report(int frames, int jankyFrames, long worstFrameNanos, long[] phaseNanos,
+        long[] jankyPhaseNanos) {
+      this.frames = frames;
+      this.jankyFrames = jankyFrames;
+      this.worstFrameNanos = worstFrameNanos;
+      this.phaseNanos = phaseNanos;
+      this.jankyPhaseNanos = jankyPhaseNanos;
+    }
+
+    public int getFrameCount() {
+      return frames;
+    }
+
+    /** Returns the number of frames that took longer than the budget. */
+    public int getJankyFrameCount() {
+      return jankyFrames;
+    }
+
+    public long getWorstFrameNanos() {
+      return worstFrameNanos;
+    }
+
+    /** Returns the time spent in {@code phase} during the scroll. */
+    public long getPhaseNanos(int phase) {
+      return phaseNanos[phase];
+    }
+
+    /** Returns the time spent in {@code phase} during the frames that took too long. */
+    public long getJankyPhaseNanos(int phase) {
+      return jankyPhaseNanos[phase];
+    }
+
+    @Override public String toString() {
+      StringBuilder sb = new StringBuilder("Report{frames=").append(frames)
+          .append(", janky=").append(jankyFrames)
+          .append(", worstMs=").append(worstFrameNanos / 1000000f);
+      for (int phase = 0; phase < PHASE_COUNT; phase++) {
+        sb.append(", phase").append(phase).append("Ms=").append(phaseNanos[phase] / 1000000f)
+            .append('/').append(jankyPhaseNanos[phase] / 1000000f);
+      }
+      return sb.append('}').toString();
+    }
+  }
+
+  private final Listener listener;
+  private final long frameBudgetNanos;
+  /** Time spent in each phase since the last frame callback. */
+  private final long[] pendingNanos = new long[PHASE_COUNT];
+  private final long[] phaseNanos = new long[PHASE_COUNT];
+  private final long[] jankyPhaseNanos = new long[PHASE_COUNT];
+  private int frames;
+  private int jankyFrames;
+  private long worstFrameNanos;
+  private long lastFrameNanos;
+  private boolean scrolling;
+  /** Frame callback, created on Jelly Bean and up only. */
+  private FrameWatcher frameWatcher;
+
+  public ScrollJankMonitor(Listener listener) {
+    this(listener, DEFAULT_FRAME_BUDGET_NANOS);
+  }
+
+  /** {@code frameBudgetNanos} is the longest a frame may take, by default a 60 Hz frame. */
+  public ScrollJankMonitor(Listener listener, long frameBudgetNanos) {
+    this.listener = listener;
+    this.frameBudgetNanos = frameBudgetNanos;
+  }
+
+  static boolean isMonitoring() {
+    return active != null;
+  }
+
+  /** Adds {@code nanos} to {@code phase} of the scroll being monitored, if any. */
+  static void addPhaseNanos(int phase, long nanos) {
+    if (active != null) {
+      active.pendingNanos[phase] += nanos;
+    }
+  }
+
+  /** Called by the picker when its list starts or stops scrolling. */
+  void onScrollStateChanged(boolean scrolling) {
+    if (scrolling == this.scrolling || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      return;
+    }
+    this.scrolling = scrolling;
+    if (scrolling) {
+      active = this;
+      Tracer.updateTiming();
+      lastFrameNanos = 0;
+      if (frameWatcher == null) {
+        frameWatcher = new FrameWatcher();
+      }
+      frameWatcher.start();
+    } else {
+      if (active == this) {
+        active = null;
+        Tracer.updateTiming();
+      }
+      frameWatcher.stop();
+      report();
+    }
+  }
+
+  /**
+   * Accounts for the frame that started at {@code frameNanos}: the time since the previous frame
+   * is its length, and the phase time recorded since then was spent producing it.
+   */
+  void onFrame(long frameNanos) {
+    if (lastFrameNanos != 0) {
+      long length = frameNanos - lastFrameNanos;
+      boolean janky = length > frameBudgetNanos;
+      frames++;
+      worstFrameNanos = Math.max(worstFrameNanos, length);
+      if (janky) {
+        jankyFrames++;
+      }
+      for (int phase = 0; phase < PHASE_COUNT; phase++) {
+        phaseNanos[phase] += pendingNanos[phase];
+        if (janky) {
+          jankyPhaseNanos[phase] += pendingNanos[phase];
+        }
+      }
+    }
+    lastFrameNanos = frameNanos;
+    for (int phase = 0; phase < PHASE_COUNT; phase++) {
+      pendingNanos[phase] = 0;
+    }
+  }
+
+  private void report() {
+    if (frames > 0) {
+      listener.onScrollReport(new Report(frames, jankyFrames, worstFrameNanos,
+          phaseNanos.clone(), jankyPhaseNanos.clone()));
+    }
+    frames = 0;
+    jankyFrames = 0;
+    worstFrameNanos = 0;
+    for (int phase = 0; phase < PHASE_COUNT; phase++) {
+      phaseNanos[phase] = 0;
+      jankyPhaseNanos[phase] = 0;
+      pendingNanos[phase] = 0;
+    }
+  }
+
+  /** Kept apart so that the monitor itself loads on devices without {@link Choreographer}. */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private final class FrameWatcher implements Choreographer.FrameCallback {
+    private boolean running;
+
+    void start() {
+      running = true;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+      running = false;
+      Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override public void doFrame(long frameTimeNanos) {
+      if (running) {
+        onFrame(frameTimeNanos);
+        Choreographer.getInstance().postFrameCallback(this);
+      }
+    }
+  }
+}
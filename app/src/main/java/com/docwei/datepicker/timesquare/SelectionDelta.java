@@ -0,0 +1,97 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * What one selection change did: the days it selected and the days it unselected, each as sorted
+ * ranges of consecutive days.  Days are epoch days, the number of days since 1970-01-01 in the
+ * picker's time zone; {@link #toDate(int)} turns one into a {@link Date}.  Range ends are
+ * exclusive.  Immutable.
+ *
+ * @see CalendarPickerView#setOnSelectionChangedListener(CalendarPickerView.OnSelectionChangedListener, boolean)
+ */
+public final class SelectionDelta {
+  /** {@code [start0, end0, start1, end1, ...]}. */
+  private final int[] added;
+  private final int[] removed;
+  private final TimeZone timeZone;
+
+  SelectionDelta(int[] added, int[] removed, TimeZone timeZone) {
+    this.added = added;
+    this.removed = removed;
+    this.timeZone = timeZone;
+  }
+
+  public boolean isEmpty() {
+    return added.length == 0 && removed.length == 0;
+  }
+
+  public int getAddedRangeCount() {
+    return added.length / 2;
+  }
+
+  public int getAddedRangeStart(int range) {
+    return added[range * 2];
+  }
+
+  /** Returns the exclusive end of an added range. */
+  public int getAddedRangeEnd(int range) {
+    return added[range * 2 + 1];
+  }
+
+  public int getRemovedRangeCount() {
+    return removed.length / 2;
+  }
+
+  public int getRemovedRangeStart(int range) {
+    return removed[range * 2];
+  }
+
+  /** Returns the exclusive end of a removed range. */
+  public int getRemovedRangeEnd(int range) {
+    return removed[range * 2 + 1];
+  }
+
+  /** Returns the number of days selected by this change. */
+  public int getAddedCount() {
+    return countDays(added);
+  }
+
+  /** Returns the number of days unselected by this change. */
+  public int getRemovedCount() {
+    return countDays(removed);
+  }
+
+  /** Returns the start of the epoch day {@code day} in the picker's time zone. */
+  public Date toDate(int day) {
+    return EpochDays.toDate(day, timeZone);
+  }
+
+  private static int countDays(int[] runs) {
+    int count = 0;
+    for (int i = 0; i < runs.length; i += 2) {
+      count += runs[i + 1] - runs[i];
+    }
+    return count;
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder("SelectionDelta{added=");
+    appendRuns(sb, added);
+    sb.append(", removed=");
+    appendRuns(sb, removed);
+    return sb.append('}').toString();
+  }
+
+  private static void appendRuns(StringBuilder sb, int[] runs) {
+    sb.append('[');
+    for (int i = 0; i < runs.length; i += 2) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(runs[i]).append("..").append(runs[i + 1] - 1);
+    }
+    sb.append(']');
+  }
+}
@@ -0,0 +1,164 @@
+package com.docwei.datepicker.timesquare;
+
+import com.docwei.datepicker.timesquare.CalendarPickerView.MonthSelectableFilter;
+import com.docwei.datepicker.timesquare.CalendarPickerView.SelectionMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * An immutable copy of a picker's selection, published on every change so that any thread can
+ * read a consistent selection while the user keeps tapping.  The days are kept as sorted ranges of
+ * epoch days (days since 1970-01-01 in the picker's time zone) with exclusive ends, as in
+ * {@link SelectionDelta}.
+ *
+ * @see CalendarPickerView#getSelectionSnapshot()
+ * @see CalendarPickerView#compareAndSetSelection(SelectionSnapshot, java.util.Collection)
+ */
+public final class SelectionSnapshot {
+  /** {@code [start0, end0, start1, end1, ...]}. */
+  private final int[] runs;
+  private final int size;
+  private final long version;
+  private final TimeZone timeZone;
+  // The rules the picker had when it published this, which a compareAndSetSelection expecting it
+  // is checked against.
+  private final SelectionMode mode;
+  private final int minDay;
+  /** Exclusive. */
+  private final int maxDay;
+  private final MonthSelectableFilter filter;
+
+  private SelectionSnapshot(int[] runs, long version, TimeZone timeZone, SelectionMode mode,
+      int minDay, int maxDay, MonthSelectableFilter filter) {
+    this.runs = runs;
+    this.version = version;
+    this.timeZone = timeZone;
+    this.mode = mode;
+    this.minDay = minDay;
+    this.maxDay = maxDay;
+    this.filter = filter;
+    int days = 0;
+    for (int i = 0; i < runs.length; i += 2) {
+      days += runs[i + 1] - runs[i];
+    }
+    size = days;
+  }
+
+  static SelectionSnapshot of(EpochDaySet days, long version, TimeZone timeZone,
+      SelectionMode mode, int minDay, int maxDay, MonthSelectableFilter filter) {
+    return new SelectionSnapshot(days.toRunArray(), version, timeZone, mode, minDay, maxDay,
+        filter);
+  }
+
+  /**
+   * Returns the snapshot after this one with {@code dates} selected, checked and normalized as the
+   * picker's own selection methods would under this snapshot's rules: throws if a date is null or
+   * out of range or the mode can't take that many dates, drops the dates the filter rejects and
+   * makes a range run from its first date to its last.  The filter is asked on the calling thread.
+   */
+  SelectionSnapshot next(Collection<Date> dates) {
+    CalendarPickerEngine.checkDateCount(mode, dates.size());
+    EpochDaySet days = new EpochDaySet();
+    int monthOrdinal = Integer.MIN_VALUE;
+    int mask = 0;
+    for (Date date : dates) {
+      int day = CalendarPickerEngine.checkDate(date, minDay, maxDay, timeZone);
+      if (filter == null) {
+        days.add(day);
+        continue;
+      }
+      if (EpochDays.monthOrdinalOf(day) != monthOrdinal) {
+        monthOrdinal = EpochDays.monthOrdinalOf(day);
+        mask = filter.getSelectableDays(EpochDays.yearOf(monthOrdinal),
+            EpochDays.monthOf(monthOrdinal));
+      }
+      if ((mask & 1 << day - EpochDays.firstDayOfMonth(monthOrdinal)) != 0) {
+        days.add(day);
+      }
+    }
+    if (mode == SelectionMode.RANGE && days.size() == 2) {
+      days.addRange(days.min(), days.max() + 1);
+    }
+    return of(days, version + 1, timeZone, mode, minDay, maxDay, filter);
+  }
+
+  /** Counts the changes published by the picker: each snapshot's version is one more. */
+  public long getVersion() {
+    return version;
+  }
+
+  /** Returns the number of selected days. */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getRangeCount() {
+    return runs.length / 2;
+  }
+
+  public int getRangeStart(int range) {
+    return runs[range * 2];
+  }
+
+  /** Returns the exclusive end of a range. */
+  public int getRangeEnd(int range) {
+    return runs[range * 2 + 1];
+  }
+
+  public boolean contains(Date date) {
+    return contains(EpochDays.fromDate(date, timeZone));
+  }
+
+  /** Returns whether the epoch day {@code day} is selected. */
+  public boolean contains(int day) {
+    // Binary search the range starts.
+    int low = 0;
+    int high = runs.length / 2 - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (runs[mid * 2] <= day) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high >= 0 && day < runs[high * 2 + 1];
+  }
+
+  /** Returns the selected dates in order, each at the start of its day. */
+  public List<Date> getDates() {
+    List<Date> dates = new ArrayList<>(size);
+    for (int i = 0; i < runs.length; i += 2) {
+      for (int day = runs[i]; day < runs[i + 1]; day++) {
+        dates.add(EpochDays.toDate(day, timeZone));
+      }
+    }
+    return Collections.unmodifiableList(dates);
+  }
+
+  TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  /** Returns the selection as a new, mutable set. */
+  EpochDaySet toDaySet() {
+    EpochDaySet days = new EpochDaySet();
+    for (int i = 0; i < runs.length; i += 2) {
+      days.addRange(runs[i], runs[i + 1]);
+    }
+    return days;
+  }
+
+  @Override public String toString() {
+    return "SelectionSnapshot{version=" + version + ", runs=" + Arrays.toString(runs) + '}';
+  }
+}
@@ -0,0 +1,163 @@
+package com.docwei.datepicker.timesquare;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Times the picker's hot paths: month inflation, binding and decoration, and grid and row measure
+ * and layout.  While {@link #setEnabled(boolean) enabled}, each section is timed in nanoseconds
+ * into an in-memory histogram that {@link #dump(PrintWriter)} prints, and on Jelly Bean MR2 and up
+ * is also shown in systrace as an {@link Trace} section.  The same timers feed a scrolling
+ * {@link ScrollJankMonitor}.
+ * <p>
+ * When neither is on, {@link #begin(int)} and {@link #end(int, long)} are one branch each and
+ * allocate nothing.  Main thread only; don't toggle it from within a measure or layout pass.
+ */
+public final class Tracer {
+  // The first sections are the jank monitor's phases, so a section is also its phase.
+  public static final int SECTION_INFLATE = ScrollJankMonitor.PHASE_INFLATE;
+  public static final int SECTION_BIND = ScrollJankMonitor.PHASE_BIND;
+  public static final int SECTION_DECORATE = ScrollJankMonitor.PHASE_DECORATE;
+  public static final int SECTION_GRID_MEASURE = ScrollJankMonitor.PHASE_MEASURE;
+  public static final int SECTION_GRID_LAYOUT = ScrollJankMonitor.PHASE_LAYOUT;
+  /** Measuring a week row; also counted in {@link #SECTION_GRID_MEASURE}. */
+  public static final int SECTION_ROW_MEASURE = 5;
+  /** Laying out a week row; also counted in {@link #SECTION_GRID_LAYOUT}. */
+  public static final int SECTION_ROW_LAYOUT = 6;
+  public static final int SECTION_COUNT = 7;
+
+  private static final String[] NAMES = {
+      "Month.inflate", "Month.bind", "Month.decorate", "Grid.onMeasure", "Grid.onLayout",
+      "Row.onMeasure", "Row.onLayout"
+  };
+  /** Bucket {@code b} counts the times from 2^(b-1) to 2^b - 1 ns; the last one everything longer. */
+  private static final int BUCKETS = 32;
+
+  private static boolean enabled;
+  /** Whether sections go to systrace: enabled on API 18 and up. */
+  private static boolean systrace;
+  /** Whether to time at all: enabled, or a jank monitor is watching a scroll. */
+  private static boolean timing;
+  private static final long[][] histograms = new long[SECTION_COUNT][BUCKETS];
+  private static final long[] counts = new long[SECTION_COUNT];
+  private static final long[] totalNanos = new long[SECTION_COUNT];
+  private static final long[] maxNanos = new long[SECTION_COUNT];
+
+  private Tracer() {
+  }
+
+  /** Starts or stops recording.  Stopping keeps the histograms; see {@link #reset()}. */
+  public static void setEnabled(boolean enabled) {
+    Tracer.enabled = enabled;
+    systrace = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    updateTiming();
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Called by {@link ScrollJankMonitor} when a monitored scroll starts or stops. */
+  static void updateTiming() {
+    timing = enabled || ScrollJankMonitor.isMonitoring();
+  }
+
+  /** Returns a start time for {@link #end(int, long)}, or 0 if nothing is timed. */
+  static long begin(int section) {
+    if (!timing) {
+      return 0;
+    }
+    if (systrace) {
+      beginSystrace(NAMES[section]);
+    }
+    return System.nanoTime();
+  }
+
+  /** Records the time since {@code start}, from {@link #begin(int)}, against {@code section}. */
+  static void end(int section, long start) {
+    if (start == 0) {
+      return;
+    }
+    long nanos = System.nanoTime() - start;
+    if (systrace) {
+      endSystrace();
+    }
+    if (section < ScrollJankMonitor.PHASE_COUNT) {
+      ScrollJankMonitor.addPhaseNanos(section, nanos);
+    }
+    if (enabled) {
+      int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+      histograms[section][bucket]++;
+      counts[section]++;
+      totalNanos[section] += nanos;
+      maxNanos[section] = Math.max(maxNanos[section], nanos);
+    }
+  }
+
+  /** Clears the histograms. */
+  public static void reset() {
+    for (int section = 0; section < SECTION_COUNT; section++) {
+      Arrays.fill(histograms[section], 0);
+      counts[section] = 0;
+      totalNanos[section] = 0;
+      maxNanos[section] = 0;
+    }
+  }
+
+  public static long getCount(int section) {
+    return counts[section];
+  }
+
+  public static long getTotalNanos(int section) {
+    return totalNanos[section];
+  }
+
+  public static long getMaxNanos(int section) {
+    return maxNanos[section];
+  }
+
+  /**
+   * Returns an upper bound of the time within which {@code fraction} (e.g. 0.99) of the calls of
+   * {@code section} took, with the power-of-two precision of the histogram; 0 if none was timed.
+   */
+  public static long getPercentileNanos(int section, float fraction) {
+    long rank = (long) Math.ceil(counts[section] * fraction);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += histograms[section][bucket];
+      if (seen >= rank && seen > 0) {
+        return bucket == BUCKETS - 1 ? maxNanos[section]
+            : Math.min(maxNanos[section], (1L << bucket) - 1);
+      }
+    }
+    return 0;
+  }
+
+  /** Prints a line per timed section: count, mean, p50, p90, p99 and max. */
+  public static void dump(PrintWriter writer) {
+    for (int section = 0; section < SECTION_COUNT; section++) {
+      long count = counts[section];
+      if (count == 0) {
+        continue;
+      }
+      writer.printf("%-15s n=%d mean=%.3fms p50<%.3fms p90<%.3fms p99<%.3fms max=%.3fms%n",
+          NAMES[section], count, totalNanos[section] / count / 1e6,
+          getPercentileNanos(section, .5f) / 1e6, getPercentileNanos(section, .9f) / 1e6,
+          getPercentileNanos(section, .99f) / 1e6, maxNanos[section] / 1e6);
+    }
+    writer.flush();
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private static void beginSystrace(String name) {
+    Trace.beginSection(name);
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private static void endSystrace() {
+    Trace.endSection();
+  }
+}
@@ -0,0 +1,150 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DayAnnotationsTest {
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+  private DayAnnotations annotations;
+  private RecordingListener listener;
+
+  @Before public void setUp() {
+    annotations = new DayAnnotations(TIME_ZONE) {
+      @Override public void apply(CalendarCellView cellView, int decoration) {
+      }
+    };
+    listener = new RecordingListener();
+    annotations.setInvalidationListener(listener);
+  }
+
+  @Test public void putsAndGetsValues() {
+    annotations.put(2017, Calendar.APRIL, 30, 7);
+    annotations.put(2017, Calendar.MAY, 1, 8);
+
+    assertEquals(7, annotations.get(date(2017, Calendar.APRIL, 30)));
+    assertEquals(8, annotations.get(date(2017, Calendar.MAY, 1)));
+    assertEquals(0, annotations.get(date(2017, Calendar.MAY, 2)));
+    assertEquals(0, annotations.get(date(2018, Calendar.MAY, 1)));
+    assertEquals(2, listener.changes);
+    assertEquals(date(2017, Calendar.MAY, 1), listener.from);
+    assertEquals(date(2017, Calendar.MAY, 1), listener.to);
+  }
+
+  @Test public void decoratesTheDaysOfAGrid() {
+    annotations.put(2017, Calendar.MARCH, 31, 1);
+    annotations.put(2017, Calendar.APRIL, 15, 2);
+    annotations.put(2017, Calendar.MAY, 1, 3);
+    // April 2017 shown from Sunday March 26 to Saturday May 6.
+    int firstDay = EpochDays.of(2017, Calendar.MARCH, 26);
+    int[] out = new int[42];
+
+    annotations.decorateMonth(EpochDays.toDate(firstDay, TIME_ZONE), out);
+
+    assertEquals(1, out[EpochDays.of(2017, Calendar.MARCH, 31) - firstDay]);
+    assertEquals(2, out[EpochDays.of(2017, Calendar.APRIL, 15) - firstDay]);
+    assertEquals(3, out[EpochDays.of(2017, Calendar.MAY, 1) - firstDay]);
+    int decorated = 0;
+    for (int value : out) {
+      decorated += value != 0 ? 1 : 0;
+    }
+    assertEquals(3, decorated);
+  }
+
+  @Test public void rangeShrinksAsValuesAreRemoved() {
+    annotations.put(2017, Calendar.JANUARY, 5, 1);
+    annotations.put(2017, Calendar.APRIL, 10, 2);
+    annotations.put(2017, Calendar.JUNE, 20, 3);
+    assertEquals(date(2017, Calendar.JANUARY, 5), annotations.getStartDate());
+    assertEquals(date(2017, Calendar.JUNE, 20), annotations.getEndDate());
+
+    annotations.remove(date(2017, Calendar.JANUARY, 5));
+    annotations.put(2017, Calendar.JUNE, 20, 0);
+
+    assertEquals(date(2017, Calendar.APRIL, 10), annotations.getStartDate());
+    assertEquals(date(2017, Calendar.APRIL, 10), annotations.getEndDate());
+
+    annotations.remove(date(2017, Calendar.APRIL, 10));
+    assertNull(annotations.getStartDate());
+    assertNull(annotations.getEndDate());
+  }
+
+  @Test public void clearRemovesEverything() {
+    annotations.put(2017, Calendar.APRIL, 10, 2);
+    annotations.put(2018, Calendar.APRIL, 10, 3);
+
+    annotations.clear();
+
+    assertEquals(0, annotations.get(date(2017, Calendar.APRIL, 10)));
+    assertNull(annotations.getStartDate());
+    assertEquals(1, listener.allChanges);
+    annotations.put(2017, Calendar.APRIL, 11, 4);
+    assertEquals(date(2017, Calendar.APRIL, 11), annotations.getStartDate());
+    assertEquals(date(2017, Calendar.APRIL, 11), annotations.getEndDate());
+  }
+
+  @Test public void batchNotifiesOnceForAllItsChanges() {
+    annotations.beginBatch();
+    annotations.put(2017, Calendar.APRIL, 10, 2);
+    annotations.beginBatch();
+    annotations.put(2017, Calendar.FEBRUARY, 3, 1);
+    annotations.endBatch();
+    annotations.put(2017, Calendar.MAY, 20, 3);
+    assertEquals(0, listener.changes);
+
+    annotations.endBatch();
+
+    assertEquals(1, listener.changes);
+    assertEquals(date(2017, Calendar.FEBRUARY, 3), listener.from);
+    assertEquals(date(2017, Calendar.MAY, 20), listener.to);
+  }
+
+  @Test public void clearInABatchIsToldAtTheEnd() {
+    annotations.beginBatch();
+    annotations.put(2017, Calendar.APRIL, 10, 2);
+    annotations.clear();
+    annotations.put(2017, Calendar.APRIL, 12, 2);
+    assertEquals(0, listener.allChanges);
+
+    annotations.endBatch();
+
+    assertEquals(1, listener.allChanges);
+    assertEquals(0, listener.changes);
+  }
+
+  @Test public void unchangedValuesAreNotTold() {
+    annotations.put(2017, Calendar.APRIL, 10, 2);
+    annotations.put(2017, Calendar.APRIL, 10, 2);
+    annotations.remove(date(2017, Calendar.APRIL, 11));
+
+    assertEquals(1, listener.changes);
+  }
+
+  private static Date date(int year, int month, int dayOfMonth) {
+    return EpochDays.toDate(EpochDays.of(year, month, dayOfMonth), TIME_ZONE);
+  }
+
+  private static class RecordingListener implements CalendarMonthDecorator.InvalidationListener {
+    int changes;
+    int allChanges;
+    Date from;
+    Date to;
+
+    @Override public void onDecorationsChanged(Date from, Date to) {
+      changes++;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override public void onAllDecorationsChanged() {
+      allChanges++;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package com.docwei.datepicker.timesquare;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EpochDaySetTest {
+  private EpochDaySet set;
+
+  @Before public void setUp() {
+    set = new EpochDaySet();
+  }
+
+  @Test public void emptySet() {
+    assertTrue(set.isEmpty());
+    assertEquals(0, set.runCount());
+    assertFalse(set.contains(0));
+    assertEquals(0, set.rank(100));
+    assertFalse(set.remove(0));
+    assertArrayEquals(new int[0], set.toRunArray());
+    boolean thrown = false;
+    try {
+      set.min();
+    } catch (IllegalStateException expected) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+  }
+
+  @Test public void addMergesAdjacentDays() {
+    assertTrue(set.add(10));
+    assertTrue(set.add(12));
+    assertArrayEquals(new int[] { 10, 11, 12, 13 }, set.toRunArray());
+
+    assertTrue(set.add(11));
+
+    assertArrayEquals(new int[] { 10, 13 }, set.toRunArray());
+    assertFalse(set.add(11));
+    assertEquals(3, set.size());
+    assertTrue(set.add(9));
+    assertTrue(set.add(13));
+    assertArrayEquals(new int[] { 9, 14 }, set.toRunArray());
+  }
+
+  @Test public void addRangeMergesTheRunsItTouches() {
+    set.addRange(0, 2);
+    set.addRange(5, 7);
+    set.addRange(10, 12);
+    set.addRange(20, 22);
+
+    // Adjacent to the first run, overlapping the second and third.
+    set.addRange(2, 11);
+
+    assertArrayEquals(new int[] { 0, 12, 20, 22 }, set.toRunArray());
+    assertEquals(14, set.size());
+    set.addRange(3, 3);
+    set.addRange(-5, -3);
+    assertArrayEquals(new int[] { -5, -3, 0, 12, 20, 22 }, set.toRunArray());
+    assertEquals(16, set.size());
+  }
+
+  @Test public void removeSplitsAndShrinksRuns() {
+    set.addRange(0, 10);
+
+    assertTrue(set.remove(5));
+    assertArrayEquals(new int[] { 0, 5, 6, 10 }, set.toRunArray());
+    assertTrue(set.remove(0));
+    assertTrue(set.remove(9));
+    assertArrayEquals(new int[] { 1, 5, 6, 9 }, set.toRunArray());
+    set.add(20);
+    assertTrue(set.remove(20));
+    assertArrayEquals(new int[] { 1, 5, 6, 9 }, set.toRunArray());
+    assertFalse(set.remove(5));
+    assertEquals(7, set.size());
+  }
+
+  @Test public void removeRangeSplitsCutsAndDropsRuns() {
+    set.addRange(0, 10);
+
+    set.removeRange(3, 5);
+    assertArrayEquals(new int[] { 0, 3, 5, 10 }, set.toRunArray());
+    set.addRange(12, 15);
+    set.addRange(20, 25);
+
+    // Cuts the end of one run, drops another and cuts the start of a third.
+    set.removeRange(8, 22);
+
+    assertArrayEquals(new int[] { 0, 3, 5, 8, 22, 25 }, set.toRunArray());
+    assertEquals(9, set.size());
+    set.removeRange(5, 8);
+    set.removeRange(22, 23);
+    set.removeRange(30, 40);
+    assertArrayEquals(new int[] { 0, 3, 23, 25 }, set.toRunArray());
+    assertEquals(5, set.size());
+    assertEquals(4, set.rank(24));
+    set.removeRange(-10, 100);
+    assertTrue(set.isEmpty());
+  }
+
+  @Test public void minMaxAndContains() {
+    set.addRange(-3, 0);
+    set.addRange(7, 9);
+
+    assertEquals(-3, set.min());
+    assertEquals(8, set.max());
+    assertTrue(set.contains(-1));
+    assertFalse(set.contains(0));
+    assertTrue(set.contains(8));
+    assertFalse(set.contains(9));
+  }
+
+  @Test public void rankCountsTheDaysBefore() {
+    set.addRange(10, 13);
+    set.addRange(20, 22);
+
+    assertEquals(0, set.rank(5));
+    assertEquals(0, set.rank(10));
+    assertEquals(2, set.rank(12));
+    assertEquals(3, set.rank(15));
+    assertEquals(4, set.rank(21));
+    assertEquals(5, set.rank(30));
+    set.remove(11);
+    assertEquals(1, set.rank(12));
+    assertEquals(4, set.rank(30));
+  }
+
+  @Test public void runsNotIn() {
+    EpochDaySet other = new EpochDaySet();
+    set.addRange(0, 10);
+    set.addRange(20, 30);
+    other.addRange(2, 4);
+    other.addRange(8, 22);
+    other.addRange(30, 40);
+
+    assertArrayEquals(new int[] { 0, 2, 4, 8, 22, 30 }, set.runsNotIn(other));
+    assertArrayEquals(new int[] { 10, 20, 30, 40 }, other.runsNotIn(set));
+    assertArrayEquals(set.toRunArray(), set.runsNotIn(new EpochDaySet()));
+    assertArrayEquals(new int[0], new EpochDaySet().runsNotIn(set));
+    assertArrayEquals(new int[0], set.runsNotIn(set));
+  }
+
+  @Test public void setToCopies() {
+    EpochDaySet other = new EpochDaySet();
+    for (int day = 0; day < 20; day += 2) {
+      other.add(day);
+    }
+
+    set.setTo(other);
+    other.clear();
+
+    assertEquals(10, set.size());
+    assertEquals(10, set.runCount());
+    assertEquals(18, set.max());
+    assertEquals(5, set.rank(10));
+  }
+}
@@ -0,0 +1,132 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EpochDaysTest {
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+  /** Zones with DST changes at or around midnight, and without DST. */
+  private static final String[] ZONES = {
+      "America/Sao_Paulo", "America/Santiago", "Asia/Tehran", "Europe/London",
+      "America/New_York", "Australia/Lord_Howe", "Asia/Shanghai"
+  };
+
+  @Test public void walksTheCalendarAcrossLeapCenturies() {
+    Calendar calendar = prolepticUtc();
+    calendar.clear();
+    calendar.set(1590, Calendar.JANUARY, 1);
+    int expected = EpochDays.of(1590, Calendar.JANUARY, 1);
+    while (calendar.get(Calendar.YEAR) < 2410) {
+      int year = calendar.get(Calendar.YEAR);
+      int month = calendar.get(Calendar.MONTH);
+      int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+      String date = year + "-" + (month + 1) + "-" + dayOfMonth;
+
+      assertEquals(date, expected, EpochDays.of(year, month, dayOfMonth));
+      assertEquals(date, EpochDays.monthOrdinal(year, month), EpochDays.monthOrdinalOf(expected));
+      assertEquals(date, dayOfMonth, EpochDays.dayOfMonth(expected));
+      assertEquals(date, calendar.get(Calendar.DAY_OF_WEEK), EpochDays.dayOfWeek(expected));
+      assertEquals(date, calendar.getActualMaximum(Calendar.DAY_OF_MONTH),
+          EpochDays.daysInMonth(EpochDays.monthOrdinal(year, month)));
+      calendar.add(Calendar.DAY_OF_MONTH, 1);
+      expected++;
+    }
+  }
+
+  @Test public void matchesTheCalendarAtTheEndsOfTheOpenEndedRange() {
+    Calendar calendar = prolepticUtc();
+    calendar.clear();
+    calendar.set(1, Calendar.JANUARY, 1);
+    assertEquals(calendar.getTimeInMillis() / EpochDays.MILLIS_PER_DAY,
+        EpochDays.of(1, Calendar.JANUARY, 1));
+    calendar.set(9999, Calendar.DECEMBER, 31);
+    assertEquals(calendar.getTimeInMillis() / EpochDays.MILLIS_PER_DAY,
+        EpochDays.of(9999, Calendar.DECEMBER, 31));
+    assertEquals(EpochDays.monthOrdinal(1, Calendar.JANUARY),
+        EpochDays.monthOrdinalOf(EpochDays.of(1, Calendar.JANUARY, 1)));
+  }
+
+  @Test public void leapYears() {
+    assertTrue(EpochDays.isLeapYear(1600));
+    assertTrue(EpochDays.isLeapYear(2000));
+    assertTrue(EpochDays.isLeapYear(2024));
+    assertFalse(EpochDays.isLeapYear(1700));
+    assertFalse(EpochDays.isLeapYear(1900));
+    assertFalse(EpochDays.isLeapYear(2100));
+    assertEquals(29, EpochDays.daysInMonth(2000, Calendar.FEBRUARY));
+    assertEquals(28, EpochDays.daysInMonth(1900, Calendar.FEBRUARY));
+  }
+
+  @Test public void toMillisIsTheFirstInstantOfTheDay() {
+    for (String id : ZONES) {
+      TimeZone zone = TimeZone.getTimeZone(id);
+      Calendar calendar = Calendar.getInstance(zone);
+      for (int day = EpochDays.of(2005, Calendar.JANUARY, 1);
+          day < EpochDays.of(2021, Calendar.JANUARY, 1); day++) {
+        long millis = EpochDays.toMillis(day, zone);
+        String where = id + " day " + day;
+
+        assertEquals(where, day, EpochDays.fromMillis(millis, zone));
+        assertEquals(where, day - 1, EpochDays.fromMillis(millis - 1, zone));
+        calendar.setTimeInMillis(millis);
+        assertEquals(where, EpochDays.dayOfMonth(day), calendar.get(Calendar.DAY_OF_MONTH));
+      }
+    }
+  }
+
+  @Test public void skippedMidnightStartsTheDayAtOne() {
+    // Brazil's DST started at midnight on 2018-11-04: the day began at 01:00.
+    TimeZone zone = TimeZone.getTimeZone("America/Sao_Paulo");
+    Calendar calendar = Calendar.getInstance(zone);
+
+    calendar.setTime(EpochDays.toDate(EpochDays.of(2018, Calendar.NOVEMBER, 4), zone));
+
+    assertEquals(4, calendar.get(Calendar.DAY_OF_MONTH));
+    assertEquals(1, calendar.get(Calendar.HOUR_OF_DAY));
+    assertEquals(0, calendar.get(Calendar.MINUTE));
+  }
+
+  @Test public void gridsMatchTheCalendarsWeeks() {
+    int[] firstDaysOfWeek = { Calendar.SUNDAY, Calendar.MONDAY, Calendar.SATURDAY };
+    for (int firstDayOfWeek : firstDaysOfWeek) {
+      Calendar calendar = prolepticUtc();
+      calendar.setFirstDayOfWeek(firstDayOfWeek);
+      calendar.setMinimalDaysInFirstWeek(1);
+      for (int monthOrdinal = EpochDays.monthOrdinal(1999, Calendar.JANUARY);
+          monthOrdinal < EpochDays.monthOrdinal(2031, Calendar.JANUARY); monthOrdinal++) {
+        calendar.clear();
+        calendar.set(EpochDays.yearOf(monthOrdinal), EpochDays.monthOf(monthOrdinal), 1);
+        int leading = (calendar.get(Calendar.DAY_OF_WEEK) - firstDayOfWeek + 7) % 7;
+        String where = firstDayOfWeek + " " + monthOrdinal;
+
+        assertEquals(where, EpochDays.firstDayOfMonth(monthOrdinal) - leading,
+            EpochDays.firstCellOfMonth(monthOrdinal, firstDayOfWeek));
+        assertEquals(where, calendar.getActualMaximum(Calendar.WEEK_OF_MONTH),
+            EpochDays.weeksInMonth(monthOrdinal, firstDayOfWeek));
+      }
+    }
+  }
+
+  @Test public void floorArithmetic() {
+    assertEquals(-1, EpochDays.floorDiv(-1, 12));
+    assertEquals(11, EpochDays.floorMod(-1, 12));
+    assertEquals(-1L, EpochDays.floorDiv(-1L, EpochDays.MILLIS_PER_DAY));
+    assertEquals(-1, EpochDays.fromMillis(-1, UTC));
+    assertEquals(new Date(-EpochDays.MILLIS_PER_DAY), EpochDays.toDate(-1, UTC));
+  }
+
+  /** Returns a UTC calendar that is Gregorian all the way back, like {@link EpochDays}. */
+  private static Calendar prolepticUtc() {
+    GregorianCalendar calendar = new GregorianCalendar(UTC);
+    calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+    return calendar;
+  }
+}
@@ -0,0 +1,118 @@
+package com.docwei.datepicker.timesquare;
+
+import java.lang.management.ManagementFactory;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class MonthBinderTest {
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+  private CalendarFormats formats;
+  private MonthModel[] months;
+  /** Looks the months up by ordinal on every bind, as the picker does. */
+  private MonthModelCache cache;
+  private RecordingSink sink;
+
+  @Before public void setUp() {
+    formats = CalendarFormats.get(Locale.CHINA, TIME_ZONE, "yyyy年MM月", "EEE", null);
+    months = new MonthModel[12];
+    for (int i = 0; i < months.length; i++) {
+      months[i] = new MonthModel(EpochDays.monthOrdinal(2017, i), Calendar.SUNDAY, TIME_ZONE);
+    }
+    cache = new MonthModelCache(months.length);
+    for (MonthModel month : months) {
+      cache.put(month.getMonthOrdinal(), month);
+    }
+    sink = new RecordingSink();
+  }
+
+  @Test public void bindsTextOfEveryCell() {
+    // April 2017 starts on a Saturday: the first row shows March 26 to April 1.
+    MonthModel april = months[Calendar.APRIL];
+    int first = april.indexOf(EpochDays.of(2017, Calendar.APRIL, 1));
+    int start = april.indexOf(EpochDays.of(2017, Calendar.APRIL, 10));
+    int end = april.indexOf(EpochDays.of(2017, Calendar.APRIL, 12));
+    int today = april.indexOf(EpochDays.of(2017, Calendar.APRIL, 20));
+    april.set(start, MonthModel.FLAG_SELECTED | MonthModel.FLAG_START, true);
+    april.set(end, MonthModel.FLAG_SELECTED | MonthModel.FLAG_END, true);
+    april.set(today, MonthModel.FLAG_TODAY, true);
+
+    MonthBinder.bindAll(april, formats, false, sink);
+
+    assertEquals(april.getCellCount(), sink.count);
+    assertEquals("26", sink.texts[0]);
+    assertEquals("1", sink.texts[first]);
+    assertEquals("10\n" + CalendarFormats.START, sink.texts[start]);
+    assertEquals("12\n" + CalendarFormats.END, sink.texts[end]);
+    assertEquals(CalendarFormats.TODAY, sink.texts[today]);
+  }
+
+  @Test public void rebindsOnlyChangedCells() {
+    MonthModel april = months[Calendar.APRIL];
+    MonthBinder.bindAll(april, formats, false, sink);
+    int day = april.indexOf(EpochDays.of(2017, Calendar.APRIL, 18));
+    april.set(day, MonthModel.FLAG_SELECTED, true);
+    sink.count = 0;
+
+    MonthBinder.bindChanged(april, formats, false, sink);
+
+    assertEquals(1, sink.count);
+    assertEquals(day / 7, sink.lastRow);
+    assertEquals(day % 7, sink.lastColumn);
+  }
+
+  @Test public void bindingDoesNotAllocate() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+
+    // Warm up so that class loading and compilation aren't counted.
+    bindRepeatedly(2000);
+    // The JIT can still allocate now and then on this thread, so take the quietest of a few
+    // rounds.  Any allocation in the bind path itself would show up in every round.
+    long allocated = Long.MAX_VALUE;
+    for (int round = 0; round < 5; round++) {
+      long before = threads.getThreadAllocatedBytes(thread);
+      bindRepeatedly(1000);
+      allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+    }
+
+    assertEquals("bytes allocated by 1000 binds of 12 months", 0, allocated);
+  }
+
+  private void bindRepeatedly(int times) {
+    for (int i = 0; i < times; i++) {
+      for (int m = 0; m < months.length; m++) {
+        MonthModel month = cache.get(months[m].getMonthOrdinal());
+        MonthBinder.bindAll(month, formats, (i & 1) == 0, sink);
+        month.set(i % month.getCellCount(), MonthModel.FLAG_SELECTED, (i & 2) == 0);
+        MonthBinder.bindChanged(month, formats, false, sink);
+      }
+    }
+  }
+
+  /** Records what it is given into preallocated fields, like a view-backed sink would. */
+  private static class RecordingSink implements MonthBinder.CellSink {
+    final String[] texts = new String[42];
+    int count;
+    int lastRow;
+    int lastColumn;
+
+    @Override public void bindCell(int row, int column, int index, int flags, String text) {
+      texts[index] = text;
+      lastRow = row;
+      lastColumn = column;
+      count++;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MonthModelCacheTest {
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+  @Test public void evictsLeastRecentlyUsed() {
+    MonthModelCache cache = new MonthModelCache(3);
+    MonthModel january = put(cache, Calendar.JANUARY);
+    MonthModel february = put(cache, Calendar.FEBRUARY);
+    put(cache, Calendar.MARCH);
+    // January is used again, so February is now the least recently used.
+    assertSame(january, cache.get(january.getMonthOrdinal()));
+
+    MonthModel april = put(cache, Calendar.APRIL);
+
+    assertNull(cache.get(february.getMonthOrdinal()));
+    assertEquals(3, cache.size());
+    assertSame(april, cache.valueAt(0));
+    assertSame(january, cache.get(january.getMonthOrdinal()));
+  }
+
+  @Test public void replacesAndRemoves() {
+    MonthModelCache cache = new MonthModelCache(3);
+    MonthModel january = put(cache, Calendar.JANUARY);
+    MonthModel march = put(cache, Calendar.MARCH);
+    MonthModel rebuilt = new MonthModel(january.getMonthOrdinal(), Calendar.SUNDAY, TIME_ZONE);
+    cache.put(january.getMonthOrdinal(), rebuilt);
+    assertEquals(2, cache.size());
+    assertSame(rebuilt, cache.get(january.getMonthOrdinal()));
+
+    cache.remove(january.getMonthOrdinal());
+    assertNull(cache.get(january.getMonthOrdinal()));
+    assertSame(march, cache.valueAt(0));
+
+    cache.evictAll();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(march.getMonthOrdinal()));
+  }
+
+  private static MonthModel put(MonthModelCache cache, int month) {
+    MonthModel model = new MonthModel(EpochDays.monthOrdinal(2017, month), Calendar.SUNDAY,
+        TIME_ZONE);
+    cache.put(model.getMonthOrdinal(), model);
+    return model;
+  }
+}
@@ -0,0 +1,50 @@
+package com.docwei.datepicker.timesquare;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MonthModelTest {
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+  private MonthModel april;
+  private float[] values;
+
+  @Before public void setUp() {
+    april = new MonthModel(EpochDays.monthOrdinal(2017, Calendar.APRIL), Calendar.SUNDAY,
+        TIME_ZONE);
+    values = new float[april.getCellCount()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+  }
+
+  @Test public void heatmapWithANewPaletteRebindsEveryCell() {
+    int[] blues = {0xff0000ff, 0xff000088};
+    int[] reds = {0xffff0000, 0xff880000};
+    april.setHeatmap(new Heatmap(april.getFirstDay(), values, blues));
+    april.takeDirtyCells();
+
+    // Same series, so the same buckets: only the colors differ.
+    april.setHeatmap(new Heatmap(april.getFirstDay(), values, reds));
+
+    assertEquals(-1L >>> (64 - april.getCellCount()), april.takeDirtyCells());
+    int last = april.getCellCount() - 1;
+    assertEquals(reds[0], april.heatColorOf(april.getFlags(0)));
+    assertEquals(reds[1], april.heatColorOf(april.getFlags(last)));
+  }
+
+  @Test public void sameHeatmapDirtiesNothing() {
+    Heatmap heatmap = new Heatmap(april.getFirstDay(), values, new int[] {0xff0000ff});
+    april.setHeatmap(heatmap);
+    april.takeDirtyCells();
+
+    april.setHeatmap(heatmap);
+
+    assertEquals(0, april.takeDirtyCells());
+  }
+}
@@ -0,0 +1,81 @@
+package com.docwei.datepicker.timesquare;
+
+import com.docwei.datepicker.timesquare.CalendarPickerView.MonthSelectableFilter;
+import com.docwei.datepicker.timesquare.CalendarPickerView.SelectionMode;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionSnapshotTest {
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+  private static final int MIN_DAY = EpochDays.of(2017, Calendar.JANUARY, 1);
+  private static final int MAX_DAY = EpochDays.of(2018, Calendar.JANUARY, 1);
+  /** Rejects the 13th of every month. */
+  private static final MonthSelectableFilter NO_13TH = new MonthSelectableFilter() {
+    @Override public int getSelectableDays(int year, int month) {
+      return ~(1 << 12);
+    }
+  };
+
+  @Test public void nextIsOneVersionOn() {
+    SelectionSnapshot snapshot = snapshot(SelectionMode.MULTIPLE, null);
+
+    SelectionSnapshot next = snapshot.next(Arrays.asList(date(2017, Calendar.MAY, 2),
+        date(2017, Calendar.MAY, 4)));
+
+    assertEquals(snapshot.getVersion() + 1, next.getVersion());
+    assertEquals(2, next.size());
+    assertTrue(next.contains(date(2017, Calendar.MAY, 4)));
+  }
+
+  @Test public void nextDropsWhatTheFilterRejects() {
+    SelectionSnapshot next = snapshot(SelectionMode.MULTIPLE, NO_13TH)
+        .next(Arrays.asList(date(2017, Calendar.MAY, 12), date(2017, Calendar.MAY, 13),
+            date(2017, Calendar.JUNE, 13)));
+
+    assertEquals(Collections.singletonList(date(2017, Calendar.MAY, 12)), next.getDates());
+  }
+
+  @Test public void nextFillsARange() {
+    SelectionSnapshot next = snapshot(SelectionMode.RANGE, NO_13TH)
+        .next(Arrays.asList(date(2017, Calendar.MAY, 20), date(2017, Calendar.MAY, 10)));
+
+    assertEquals(1, next.getRangeCount());
+    assertEquals(EpochDays.of(2017, Calendar.MAY, 10), next.getRangeStart(0));
+    assertEquals(EpochDays.of(2017, Calendar.MAY, 21), next.getRangeEnd(0));
+  }
+
+  @Test public void nextChecksTheModeAndRange() {
+    assertRejected(snapshot(SelectionMode.SINGLE, null),
+        date(2017, Calendar.MAY, 2), date(2017, Calendar.MAY, 3));
+    assertRejected(snapshot(SelectionMode.RANGE, null), date(2017, Calendar.MAY, 2),
+        date(2017, Calendar.MAY, 3), date(2017, Calendar.MAY, 4));
+    assertRejected(snapshot(SelectionMode.MULTIPLE, null), date(2018, Calendar.JANUARY, 1));
+    assertRejected(snapshot(SelectionMode.MULTIPLE, null), (Date) null);
+  }
+
+  private static void assertRejected(SelectionSnapshot snapshot, Date... dates) {
+    boolean thrown = false;
+    try {
+      snapshot.next(Arrays.asList(dates));
+    } catch (IllegalArgumentException expected) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+  }
+
+  private static SelectionSnapshot snapshot(SelectionMode mode, MonthSelectableFilter filter) {
+    return SelectionSnapshot.of(new EpochDaySet(), 3, TIME_ZONE, mode, MIN_DAY, MAX_DAY, filter);
+  }
+
+  private static Date date(int year, int month, int dayOfMonth) {
+    return EpochDays.toDate(EpochDays.of(year, month, dayOfMonth), TIME_ZONE);
+  }
+}